@@ -0,0 +1,107 @@
+/*
+	Copyright 2012 Milian Wolff <mail@milianw.de>
+
+	This program is free software; you can redistribute it and/or
+	modify it under the terms of the GNU General Public License as
+	published by the Free Software Foundation; either version 2 of
+	the License, or (at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+import java.awt.Color;
+
+import jv.geom.PgElementSet;
+
+/**
+ * Precomputed lookup table of colors for values normalized to [0, 1].
+ *
+ * Mapping a scalar field to colors then only needs one multiply-add and
+ * a table lookup per vertex, and all vertices share the Color instances
+ * of the table instead of allocating their own.
+ */
+class ColorRamp {
+	/**
+	 * Ramp over the full hue circle with full saturation and brightness,
+	 * i.e. Color.getHSBColor(value, 1, 1). Note that 0 and 1 are both red.
+	 *
+	 * @param size number of entries, the hue is rounded to the nearest one
+	 */
+	public static ColorRamp hue(int size)
+	{
+		assert size > 1;
+		Color[] colors = new Color[size];
+		for(int i = 0; i < size; ++i) {
+			colors[i] = Color.getHSBColor((float) i / (size - 1), 1.0f, 1.0f);
+		}
+		return new ColorRamp(colors);
+	}
+	private ColorRamp(Color[] colors)
+	{
+		m_colors = colors;
+	}
+	/**
+	 * @return number of entries
+	 */
+	public int size()
+	{
+		return m_colors.length;
+	}
+	/**
+	 * @return entry for @p value, clamped to [0, 1]
+	 */
+	public int index(double value)
+	{
+		if (!(value > 0)) {
+			// includes NaN
+			return 0;
+		} else if (value >= 1) {
+			return m_colors.length - 1;
+		}
+		return (int) (value * (m_colors.length - 1) + 0.5d);
+	}
+	public Color color(int index)
+	{
+		return m_colors[index];
+	}
+	/**
+	 * Map each of the @p values to the entry for @p scale * value + @p offset,
+	 * in parallel.
+	 *
+	 * @return entry per value, see color()
+	 */
+	public int[] indices(final double[] values, final double scale, final double offset)
+	{
+		final int[] indices = new int[values.length];
+		Parallel.forEachChunk(values.length, new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				for(int i = begin; i < end; ++i) {
+					indices[i] = index(scale * values[i] + offset);
+				}
+			}
+		});
+		return indices;
+	}
+	/**
+	 * Set the vertex colors of @p geometry to the entries @p indices,
+	 * all at once instead of calling setVertexColor() per vertex.
+	 */
+	public void apply(PgElementSet geometry, int[] indices)
+	{
+		assert indices.length == geometry.getNumVertices();
+		Color[] colors = new Color[indices.length];
+		for(int i = 0; i < indices.length; ++i) {
+			colors[i] = m_colors[indices[i]];
+		}
+		geometry.setVertexColors(colors);
+	}
+	private final Color[] m_colors;
+}
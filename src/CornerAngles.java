@@ -0,0 +1,130 @@
+/*
+	Copyright 2012 Milian Wolff <mail@milianw.de>
+
+	This program is free software; you can redistribute it and/or
+	modify it under the terms of the GNU General Public License as
+	published by the Free Software Foundation; either version 2 of
+	the License, or (at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+import jv.geom.PgElementSet;
+
+/**
+ * Interior angle of each corner of a corner table and values derived
+ * from it, computed once and indexed like the corners.
+ *
+ * Like PgElementSet.getVertexAngle(), angles are in degrees.
+ */
+class CornerAngles {
+	public CornerAngles(final PgElementSet geometry, final CornerTable cornerTable)
+	{
+		final int size = cornerTable.size();
+		m_geometry = geometry;
+		m_cornerTable = cornerTable;
+		m_angle = new double[size];
+		m_cotan = new double[size];
+		m_tan = new double[size];
+		m_obtuse = new byte[size];
+		Parallel.forEachChunk(size, new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				for(int c = begin; c < end; ++c) {
+					compute(c);
+				}
+			}
+		});
+	}
+	/**
+	 * Recompute the values of the given @p corners, e.g. after their
+	 * triangles were modified.
+	 */
+	public void update(int[] corners)
+	{
+		for(int c : corners) {
+			compute(c);
+		}
+	}
+	/**
+	 * note: each angle is computed only once here, and equal angles of
+	 * different corners are rare, hence caching cotan values would not pay off
+	 */
+	private void compute(int c)
+	{
+		final double angle = m_geometry.getVertexAngle(m_cornerTable.triangle(c),
+														m_cornerTable.localVertexIndex(c));
+		m_angle[c] = angle;
+		m_cotan[c] = 0;
+		m_tan[c] = 0;
+		if (angle > 0) {
+			m_cotan[c] = computeCotan(angle);
+			m_tan[c] = 1.0d / m_cotan[c];
+		}
+		m_obtuse[c] = (byte) (angle > 90 ? 1 : 0);
+	}
+	/**
+	 * @return cotan of @p degree, exactly zero for right angles
+	 */
+	private static double computeCotan(double degree)
+	{
+		assert degree > 0 : degree;
+		if (degree == 90) {
+			return 0;
+		}
+		assert Math.tan(Math.toRadians(degree)) != 0 : degree;
+		final double val = 1.0d / Math.tan(Math.toRadians(degree));
+		assert !Double.isNaN(val) : degree;
+		assert !Double.isInfinite(val) : degree;
+		return val;
+	}
+	/**
+	 * @return number of corners
+	 */
+	public int size()
+	{
+		return m_angle.length;
+	}
+	/**
+	 * @return interior angle of corner @p c in degrees
+	 */
+	public double angle(int c)
+	{
+		return m_angle[c];
+	}
+	/**
+	 * @return cotangent of the angle of corner @p c,
+	 * zero for degenerated corners with zero angle
+	 */
+	public double cotan(int c)
+	{
+		return m_cotan[c];
+	}
+	/**
+	 * @return tangent of the angle of corner @p c, zero for zero angles
+	 */
+	public double tan(int c)
+	{
+		return m_tan[c];
+	}
+	/**
+	 * @return true if the angle of corner @p c is larger than 90 degrees
+	 */
+	public boolean isObtuse(int c)
+	{
+		return m_obtuse[c] != 0;
+	}
+	private PgElementSet m_geometry;
+	private CornerTable m_cornerTable;
+	private double[] m_angle;
+	private double[] m_cotan;
+	private double[] m_tan;
+	private byte[] m_obtuse;
+}
@@ -16,71 +16,22 @@
 */
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 
 import jv.geom.PgElementSet;
 import jv.vecmath.PiVector;
 
-class Corner {
-	public Corner prev;
-	public Corner next;
-	public Corner opposite;
-	public int vertex;
-	public int triangle;
-	public int localVertexIndex;
-	/**
-	 * find neighbors of current vertex by iterating over the corner table
-	 * starting with prev and then jumping to .o.p of that corner
-	 * until we reach next and quit.
-	 *
-	 * If we reach a corner with .o.p == null, we reverse the direction
-	 * and start with next until we reach .o.n == null
-	 *
-	 * @return array of corners that indicate the neighbors of
-	 * the current vertex
-	 */
-	public Corner[] vertexNeighbors() {
-		ArrayList<Corner> neighbors = new ArrayList<Corner>(10);
-		Corner i = prev;
-		boolean usePrev = true;
-		while(true) {
-			neighbors.add(i);
-			if ((usePrev && i.vertex == next.vertex) ||
-				(!usePrev && i.vertex == prev.vertex))
-			{
-				// we just handled the last neighbor - stop
-				break;
-			} else {
-				if (usePrev) {
-					i = i.prev.opposite;
-					if (i == null) {
-						i = next;
-						usePrev = false;
-					}
-				} else {
-					i = i.next.opposite;
-					if (i == null) {
-						break;
-					}
-				}
-			}
-		}
-		Corner[] ret = new Corner[neighbors.size()];
-		neighbors.toArray(ret);
-		return ret;
-	}
-}
-
 /**
  * Private struct that resembles a row in the
  * initial corner-table creation routine
  */
 class CTRow implements Comparable<CTRow> {
-	public CTRow(Corner corner)
+	public CTRow(int corner, int a, int b)
 	{
 		c = corner;
-		min = Math.min(c.prev.vertex, c.next.vertex);
-		max = Math.max(c.prev.vertex, c.next.vertex);
+		min = Math.min(a, b);
+		max = Math.max(a, b);
 	}
 	/**
 	 * Sort first by min, then by max in ascending order
@@ -102,52 +53,133 @@ class CTRow implements Comparable<CTRow> {
 			return 1;
 		}
 	}
-	public Corner c;
+	public int c;
 	public int min;
 	public int max;
 }
 
+/**
+ * Corner table stored as flat primitive arrays.
+ *
+ * Corners are identified by their index. The three corners of
+ * triangle t are 3t, 3t+1 and 3t+2, hence the triangle, the
+ * local vertex index as well as next and prev are computed
+ * from the index and only vertex and opposite need to be stored.
+ */
 class CornerTable {
+	/**
+	 * Marker for a missing opposite corner, i.e. a boundary edge.
+	 */
+	public static final int NONE = -1;
+	/**
+	 * Algorithm used to find opposite corners.
+	 */
+	public enum ConstructionMode {
+		// sort all half-edges by their vertices, O(n log n)
+		Sorting,
+		// match half-edges in a primitive hash table, O(n)
+		Hashing,
+		// like Hashing, but fill the table and match partitions of the
+		// half-edges on all cores, the result is identical
+		Parallel
+	}
+	/**
+	 * Meshes with at least this many triangles are constructed in parallel by default.
+	 */
+	public static final int PARALLEL_THRESHOLD = 100000;
 	public CornerTable(PgElementSet geometry)
 	{
-		// actual corners
-		m_corners = new ArrayList<Corner>(geometry.getNumElements() * 3);
-		// temporary table to find c.opposite
-		ArrayList<CTRow> table = new ArrayList<CTRow>(geometry.getNumElements() * 3);
-		for(int i = 0; i < geometry.getNumElements(); ++i) {
-			PiVector vertices = geometry.getElement(i);
-			Corner a = new Corner();
-			a.vertex = vertices.getEntry(0);
-			a.localVertexIndex = 0;
-			a.triangle = i;
-			Corner b = new Corner();
-			b.vertex = vertices.getEntry(1);
-			b.localVertexIndex = 1;
-			b.triangle = i;
-			Corner c = new Corner();
-			c.vertex = vertices.getEntry(2);
-			c.localVertexIndex = 2;
-			c.triangle = i;
-			
-			a.prev = c;
-			a.next = b;
-			b.prev = a;
-			b.next = c;
-			c.prev = b;
-			c.next = a;
+		this(geometry, geometry.getNumElements() >= PARALLEL_THRESHOLD
+						? ConstructionMode.Parallel : ConstructionMode.Hashing);
+	}
+	public CornerTable(final PgElementSet geometry, ConstructionMode mode)
+	{
+		final int numCorners = geometry.getNumElements() * 3;
+		m_numVertices = geometry.getNumVertices();
+		m_vertex = new int[numCorners];
+		m_opposite = new int[numCorners];
+		Parallel.Loop fill = new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				for(int i = begin; i < end; ++i) {
+					PiVector vertices = geometry.getElement(i);
+					m_vertex[3 * i] = vertices.getEntry(0);
+					m_vertex[3 * i + 1] = vertices.getEntry(1);
+					m_vertex[3 * i + 2] = vertices.getEntry(2);
+				}
+				Arrays.fill(m_opposite, 3 * begin, 3 * end, NONE);
+			}
+		};
+		if (mode == ConstructionMode.Parallel) {
+			Parallel.forEachChunk(geometry.getNumElements(), fill);
+		} else {
+			fill.run(0, 0, geometry.getNumElements());
+		}
 
-			m_corners.add(a);
-			m_corners.add(b);
-			m_corners.add(c);
-			
-			table.add(new CTRow(a));
-			table.add(new CTRow(b));
-			table.add(new CTRow(c));
-		}
-		
+		m_nonManifoldEdges = 0;
+		switch (mode) {
+		case Sorting:
+			matchOppositesBySorting();
+			break;
+		case Hashing:
+			m_nonManifoldEdges = matchOppositesByHashing(null, 0, numCorners);
+			break;
+		case Parallel:
+			matchOppositesInParallel();
+			break;
+		}
+		if (m_nonManifoldEdges > 0) {
+			System.err.println("non-manifold edges encountered, shared by more than two triangles: "
+								+ m_nonManifoldEdges);
+		}
+		findVertexCorners();
+	}
+	/**
+	 * Restore a previously computed table, see CurvatureCache.
+	 */
+	CornerTable(int[] vertex, int[] opposite, int[] vertexCorner, int nonManifoldEdges)
+	{
+		assert vertex.length == opposite.length;
+		m_numVertices = vertexCorner.length;
+		m_vertex = vertex;
+		m_opposite = opposite;
+		m_vertexCorner = vertexCorner;
+		m_nonManifoldEdges = nonManifoldEdges;
+	}
+	/**
+	 * Pick one representative corner per vertex.
+	 *
+	 * For interior vertices this is the first corner in the table. For boundary
+	 * vertices it is the first corner c whose edge to the prev vertex lies on
+	 * the boundary, i.e. c.n.o == NONE. Walking the neighbors from such a
+	 * corner sweeps the whole fan in one direction.
+	 */
+	private void findVertexCorners()
+	{
+		m_vertexCorner = new int[m_numVertices];
+		Arrays.fill(m_vertexCorner, NONE);
+		for(int c = 0; c < m_vertex.length; ++c) {
+			final int v = m_vertex[c];
+			final int current = m_vertexCorner[v];
+			if (current == NONE
+				|| (m_opposite[next(c)] == NONE && m_opposite[next(current)] != NONE))
+			{
+				m_vertexCorner[v] = c;
+			}
+		}
+	}
+	private void matchOppositesBySorting()
+	{
+		final int numCorners = m_vertex.length;
+		// temporary table to find opposite corners
+		ArrayList<CTRow> table = new ArrayList<CTRow>(numCorners);
+		for(int c = 0; c < numCorners; ++c) {
+			table.add(new CTRow(c, m_vertex[prev(c)], m_vertex[next(c)]));
+		}
 		// sort table by min index, see CTRow::compareTo
 		Collections.sort(table);
-		// find pairs and associate c.opposite
+		// find pairs and associate opposite corners
 		// thanks to sorting, every two consecutive rows
 		// are opposite to each other
 		for(int i = 0; i < table.size() - 1; i++) {
@@ -157,22 +189,511 @@ class CornerTable {
 				continue;
 			}
 			assert a.max == b.max;
-			a.c.opposite = b.c;
-			b.c.opposite = a.c;
+			m_opposite[a.c] = b.c;
+			m_opposite[b.c] = a.c;
 			++i;
+			// skip further rows of the same edge, they are left unpaired
+			if (i + 1 < table.size() && table.get(i + 1).compareTo(a) == 0) {
+				++m_nonManifoldEdges;
+				while (i + 1 < table.size() && table.get(i + 1).compareTo(a) == 0) {
+					++i;
+				}
+			}
+		}
+	}
+	/**
+	 * Find opposite corners in linear time with an open-addressing hash table.
+	 *
+	 * Each corner c identifies the edge between its prev and next vertex. The
+	 * edge is keyed by the packed (min, max) vertex pair, the value is the
+	 * first corner seen for that edge. The second corner pairs up with it,
+	 * every further corner marks the edge as non-manifold and stays unpaired.
+	 *
+	 * @param corners corners to match, in ascending order, or null for all corners
+	 * @param begin first index into @p corners
+	 * @param end index behind the last entry in @p corners
+	 * @return number of non-manifold edges found
+	 */
+	private int matchOppositesByHashing(int[] corners, int begin, int end)
+	{
+		// every interior edge is shared by two corners, hence this keeps the load below 0.5
+		final int capacity = Integer.highestOneBit(Math.max(end - begin, 1)) * 4;
+		final int mask = capacity - 1;
+		long[] keys = new long[capacity];
+		Arrays.fill(keys, EMPTY_KEY);
+		int[] values = new int[capacity];
+		int nonManifoldEdges = 0;
+		for(int i = begin; i < end; ++i) {
+			final int c = corners == null ? i : corners[i];
+			final long key = edgeKey(m_vertex[prev(c)], m_vertex[next(c)]);
+			int slot = hashEdgeKey(key) & mask;
+			while (keys[slot] != EMPTY_KEY && keys[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+			if (keys[slot] == EMPTY_KEY) {
+				keys[slot] = key;
+				values[slot] = c;
+			} else if (values[slot] >= 0) {
+				final int o = values[slot];
+				m_opposite[o] = c;
+				m_opposite[c] = o;
+				values[slot] = PAIRED_EDGE;
+			} else if (values[slot] == PAIRED_EDGE) {
+				++nonManifoldEdges;
+				values[slot] = NON_MANIFOLD_EDGE;
+			}
 		}
+		return nonManifoldEdges;
+	}
+	/**
+	 * Parallel version of matchOppositesByHashing.
+	 *
+	 * The corners are distributed into partitions by the high bits of their
+	 * edge hash, such that both corners of an edge always end up in the same
+	 * partition. This is a stable counting sort, hence each partition lists its
+	 * corners in ascending order and matching the partitions independently
+	 * yields the same table as the sequential version.
+	 */
+	private void matchOppositesInParallel()
+	{
+		final int numCorners = m_vertex.length;
+		final int numChunks = Parallel.numChunks(numCorners, Parallel.MIN_CHUNK_SIZE);
+		final int partitionBits = 32 - Integer.numberOfLeadingZeros(Math.max(numChunks - 1, 1));
+		final int numPartitions = 1 << partitionBits;
+		// counts[chunk][partition], turned into scatter offsets below
+		final int[][] offsets = new int[numChunks][numPartitions];
+		Parallel.forEachChunk(numCorners, numChunks, new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				int[] counts = offsets[chunk];
+				for(int c = begin; c < end; ++c) {
+					++counts[partition(c, partitionBits)];
+				}
+			}
+		});
+		// partition major, chunk minor keeps the corners of each partition sorted
+		final int[] partitionBegin = new int[numPartitions + 1];
+		int offset = 0;
+		for(int p = 0; p < numPartitions; ++p) {
+			partitionBegin[p] = offset;
+			for(int chunk = 0; chunk < numChunks; ++chunk) {
+				int count = offsets[chunk][p];
+				offsets[chunk][p] = offset;
+				offset += count;
+			}
+		}
+		partitionBegin[numPartitions] = offset;
+		assert offset == numCorners;
+		final int[] corners = new int[numCorners];
+		Parallel.forEachChunk(numCorners, numChunks, new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				int[] next = offsets[chunk];
+				for(int c = begin; c < end; ++c) {
+					corners[next[partition(c, partitionBits)]++] = c;
+				}
+			}
+		});
+		final int[] nonManifoldEdges = new int[numPartitions];
+		Parallel.forEachChunk(numPartitions, numPartitions, new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				for(int p = begin; p < end; ++p) {
+					nonManifoldEdges[p] = matchOppositesByHashing(corners, partitionBegin[p],
+																	partitionBegin[p + 1]);
+				}
+			}
+		});
+		for(int count : nonManifoldEdges) {
+			m_nonManifoldEdges += count;
+		}
+	}
+	/**
+	 * @return partition of the edge opposite to corner @p c, see matchOppositesInParallel
+	 */
+	private int partition(int c, int partitionBits)
+	{
+		return hashEdgeKey(edgeKey(m_vertex[prev(c)], m_vertex[next(c)])) >>> (32 - partitionBits);
 	}
-	public ArrayList<Corner> corners()
+	/**
+	 * @return key for the undirected edge between vertices @p a and @p b
+	 */
+	private static long edgeKey(int a, int b)
+	{
+		return ((long) Math.min(a, b) << 32) | (Math.max(a, b) & 0xffffffffL);
+	}
+	private static int hashEdgeKey(long key)
+	{
+		// fibonacci hashing, spreads the packed vertex indices over all bits
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+	/**
+	 * @return number of edges that are shared by more than two triangles
+	 */
+	public int numNonManifoldEdges()
 	{
-		return m_corners;
+		return m_nonManifoldEdges;
 	}
+	/**
+	 * @return number of corners, i.e. three times the number of triangles
+	 */
 	public int size()
 	{
-		return m_corners.size();
+		return m_vertex.length;
+	}
+	/**
+	 * @return vertex index of corner @p c
+	 */
+	public int vertex(int c)
+	{
+		return m_vertex[c];
+	}
+	/**
+	 * @return index of the triangle corner @p c belongs to
+	 */
+	public int triangle(int c)
+	{
+		return c / 3;
+	}
+	/**
+	 * @return index of corner @p c inside its triangle, i.e. 0, 1 or 2
+	 */
+	public int localVertexIndex(int c)
+	{
+		return c % 3;
+	}
+	/**
+	 * @return next corner in the triangle of @p c
+	 */
+	public int next(int c)
+	{
+		return c % 3 == 2 ? c - 2 : c + 1;
+	}
+	/**
+	 * @return previous corner in the triangle of @p c
+	 */
+	public int prev(int c)
+	{
+		return c % 3 == 0 ? c + 2 : c - 1;
+	}
+	/**
+	 * @return corner opposite to @p c or NONE for boundary edges
+	 */
+	public int opposite(int c)
+	{
+		return m_opposite[c];
+	}
+	/**
+	 * @return number of vertices of the geometry this table was built for
+	 */
+	public int numVertices()
+	{
+		return m_numVertices;
+	}
+	/**
+	 * @return representative corner of vertex @p v or NONE if it is
+	 * not part of any triangle, see findVertexCorners()
+	 */
+	public int vertexCorner(int v)
+	{
+		return m_vertexCorner[v];
+	}
+	/**
+	 * @return true if vertex @p v lies on the boundary of the surface
+	 */
+	public boolean isBoundaryVertex(int v)
+	{
+		final int c = m_vertexCorner[v];
+		return c != NONE && m_opposite[next(c)] == NONE;
+	}
+	/**
+	 * find neighbors of the vertex of corner @p c by iterating over
+	 * the corner table starting with prev and then jumping to .o.p of
+	 * that corner until we reach next and quit.
+	 *
+	 * If we reach a corner with .o.p == NONE, we reverse the direction
+	 * and start with next until we reach .o.n == NONE
+	 *
+	 * Use oneRing() to iterate the neighbors without allocations.
+	 *
+	 * @return array of corners that indicate the neighbors of
+	 * the vertex of @p c
+	 */
+	public int[] vertexNeighbors(int c)
+	{
+		int[] neighbors = new int[vertexNeighbors(c, null, 0)];
+		vertexNeighbors(c, neighbors, 0);
+		return neighbors;
+	}
+	/**
+	 * Walk the neighbors of the vertex of corner @p c, see above.
+	 *
+	 * @param out if not null, the neighbor corners get written to it
+	 * @param offset index into @p out for the first neighbor
+	 * @return number of neighbors
+	 */
+	private int vertexNeighbors(int c, int[] out, int offset)
+	{
+		int size = 0;
+		final int prevVertex = m_vertex[prev(c)];
+		final int nextVertex = m_vertex[next(c)];
+		int i = prev(c);
+		boolean usePrev = true;
+		while(true) {
+			if (out != null) {
+				out[offset + size] = i;
+			}
+			++size;
+			if ((usePrev && m_vertex[i] == nextVertex) ||
+				(!usePrev && m_vertex[i] == prevVertex))
+			{
+				// we just handled the last neighbor - stop
+				break;
+			} else {
+				if (usePrev) {
+					i = m_opposite[prev(i)];
+					if (i == NONE) {
+						i = next(c);
+						usePrev = false;
+					}
+				} else {
+					i = m_opposite[next(i)];
+					if (i == NONE) {
+						break;
+					}
+				}
+			}
+		}
+		return size;
+	}
+	/**
+	 * Corners of all vertices in compressed sparse row form, computed once on first use.
+	 *
+	 * The corners of vertex v are incidentCorners()[k] for k in
+	 * [incidentCornerOffsets()[v], incidentCornerOffsets()[v + 1]),
+	 * in ascending order.
+	 *
+	 * @return offsets into incidentCorners(), numVertices() + 1 entries
+	 */
+	public synchronized int[] incidentCornerOffsets()
+	{
+		if (m_incidentCornerOffsets == null) {
+			buildIncidentCorners();
+		}
+		return m_incidentCornerOffsets;
+	}
+	/**
+	 * @return corners grouped by vertex, see incidentCornerOffsets()
+	 */
+	public synchronized int[] incidentCorners()
+	{
+		if (m_incidentCorners == null) {
+			buildIncidentCorners();
+		}
+		return m_incidentCorners;
+	}
+	private void buildIncidentCorners()
+	{
+		// counting sort of the corners by vertex, stable hence ascending per vertex
+		int[] offsets = new int[m_numVertices + 1];
+		for(int c = 0; c < m_vertex.length; ++c) {
+			++offsets[m_vertex[c] + 1];
+		}
+		for(int v = 0; v < m_numVertices; ++v) {
+			offsets[v + 1] += offsets[v];
+		}
+		int[] next = Arrays.copyOf(offsets, m_numVertices);
+		int[] corners = new int[m_vertex.length];
+		for(int c = 0; c < m_vertex.length; ++c) {
+			corners[next[m_vertex[c]]++] = c;
+		}
+		m_incidentCornerOffsets = offsets;
+		m_incidentCorners = corners;
+	}
+	/**
+	 * One-ring neighborhoods of all vertices, computed once on first use.
+	 *
+	 * The ring of a vertex is walked starting at vertexCorner().
+	 *
+	 * @return compressed sparse row representation of all vertex neighbors
+	 */
+	public synchronized OneRing oneRing()
+	{
+		if (m_oneRing == null) {
+			m_oneRing = buildOneRing();
+		}
+		return m_oneRing;
+	}
+	private OneRing buildOneRing()
+	{
+		final int[] start = m_vertexCorner;
+		// first count the neighbors, then compute offsets and fill the rows
+		final int[] offsets = new int[m_numVertices + 1];
+		Parallel.forEachChunk(m_numVertices, new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				for(int v = begin; v < end; ++v) {
+					if (start[v] != NONE) {
+						offsets[v + 1] = vertexNeighbors(start[v], null, 0);
+					}
+				}
+			}
+		});
+		for(int v = 0; v < m_numVertices; ++v) {
+			offsets[v + 1] += offsets[v];
+		}
+		final int[] corners = new int[offsets[m_numVertices]];
+		final int[] vertices = new int[corners.length];
+		Parallel.forEachChunk(m_numVertices, new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				for(int v = begin; v < end; ++v) {
+					if (start[v] == NONE) {
+						continue;
+					}
+					vertexNeighbors(start[v], corners, offsets[v]);
+					for(int k = offsets[v]; k < offsets[v + 1]; ++k) {
+						vertices[k] = m_vertex[corners[k]];
+					}
+				}
+			}
+		});
+		return new OneRing(offsets, vertices, corners);
+	}
+	/**
+	 * Greedy coloring of the vertices, such that no two neighbors
+	 * share the same color, computed once on first use.
+	 *
+	 * The vertices of color k are coloredVertices()[l] for l in
+	 * [colorOffsets()[k], colorOffsets()[k + 1]), in ascending order.
+	 * Vertices are colored in index order, hence the coloring is deterministic.
+	 *
+	 * @return offsets into coloredVertices(), number of colors + 1 entries
+	 */
+	public synchronized int[] colorOffsets()
+	{
+		if (m_colorOffsets == null) {
+			buildColoring();
+		}
+		return m_colorOffsets;
 	}
-	public Corner corner(int i)
+	/**
+	 * @return vertices grouped by color, see colorOffsets()
+	 */
+	public synchronized int[] coloredVertices()
 	{
-		return m_corners.get(i);
+		if (m_coloredVertices == null) {
+			buildColoring();
+		}
+		return m_coloredVertices;
 	}
-	private ArrayList<Corner> m_corners; 
-}
\ No newline at end of file
+	private void buildColoring()
+	{
+		OneRing ring = oneRing();
+		int[] color = new int[m_numVertices];
+		// forbidden[k] == v + 1 if color k is used by a neighbor of v,
+		// and -(v + 1) while recoloring v below
+		int[] forbidden = new int[16];
+		int numColors = 0;
+		for(int v = 0; v < m_numVertices; ++v) {
+			for(int k = ring.begin(v); k < ring.end(v); ++k) {
+				int j = ring.vertex(k);
+				if (j < v) {
+					forbidden[color[j]] = v + 1;
+				}
+			}
+			int c = 0;
+			while (c < numColors && forbidden[c] == v + 1) {
+				++c;
+			}
+			color[v] = c;
+			if (c == numColors) {
+				++numColors;
+				if (numColors == forbidden.length) {
+					forbidden = Arrays.copyOf(forbidden, 2 * numColors);
+				}
+			}
+		}
+		// non-manifold rings are not necessarily symmetric, i.e. a vertex
+		// might have been colored without seeing all of its neighbors
+		int[] reverseOffsets = null;
+		int[] reverse = null;
+		for(int v = 0; v < m_numVertices; ++v) {
+			for(int k = ring.begin(v); k < ring.end(v); ++k) {
+				int j = ring.vertex(k);
+				if (j <= v || color[j] != color[v]) {
+					continue;
+				}
+				if (reverse == null) {
+					// vertices whose ring contains j, which are neighbors of j as well
+					reverseOffsets = new int[m_numVertices + 1];
+					for(int l = 0; l < ring.size(); ++l) {
+						++reverseOffsets[ring.vertex(l) + 1];
+					}
+					for(int u = 0; u < m_numVertices; ++u) {
+						reverseOffsets[u + 1] += reverseOffsets[u];
+					}
+					reverse = new int[ring.size()];
+					int[] next = Arrays.copyOf(reverseOffsets, m_numVertices);
+					for(int u = 0; u < m_numVertices; ++u) {
+						for(int l = ring.begin(u); l < ring.end(u); ++l) {
+							reverse[next[ring.vertex(l)]++] = u;
+						}
+					}
+				}
+				// greedy choice again, but against all neighbors of j in both directions
+				for(int l = ring.begin(j); l < ring.end(j); ++l) {
+					forbidden[color[ring.vertex(l)]] = -(j + 1);
+				}
+				for(int l = reverseOffsets[j]; l < reverseOffsets[j + 1]; ++l) {
+					forbidden[color[reverse[l]]] = -(j + 1);
+				}
+				int c = 0;
+				while (c < numColors && forbidden[c] == -(j + 1)) {
+					++c;
+				}
+				color[j] = c;
+				if (c == numColors) {
+					++numColors;
+					if (numColors == forbidden.length) {
+						forbidden = Arrays.copyOf(forbidden, 2 * numColors);
+					}
+				}
+			}
+		}
+		// counting sort by color, stable hence ascending per color
+		int[] offsets = new int[numColors + 1];
+		for(int v = 0; v < m_numVertices; ++v) {
+			++offsets[color[v] + 1];
+		}
+		for(int c = 0; c < numColors; ++c) {
+			offsets[c + 1] += offsets[c];
+		}
+		int[] next = Arrays.copyOf(offsets, numColors);
+		int[] vertices = new int[m_numVertices];
+		for(int v = 0; v < m_numVertices; ++v) {
+			vertices[next[color[v]]++] = v;
+		}
+		m_colorOffsets = offsets;
+		m_coloredVertices = vertices;
+	}
+	private static final long EMPTY_KEY = -1;
+	private static final int PAIRED_EDGE = -1;
+	private static final int NON_MANIFOLD_EDGE = -2;
+	private int m_numVertices;
+	private int[] m_vertex;
+	private int[] m_opposite;
+	private int[] m_vertexCorner;
+	private int m_nonManifoldEdges;
+	private OneRing m_oneRing;
+	private int[] m_incidentCornerOffsets;
+	private int[] m_incidentCorners;
+	private int[] m_colorOffsets;
+	private int[] m_coloredVertices;
+}
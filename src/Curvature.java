@@ -16,9 +16,7 @@
 */
 
 import java.awt.Color;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
 
 import jv.geom.PgElementSet;
 import jv.geom.PgVectorField;
@@ -31,9 +29,55 @@ import jv.vecmath.PdVector;
 public class Curvature {
 	private PgElementSet m_geometry;
 	private CornerTable m_cornerTable;
-	private VertexCurvature[] m_vertexMap;
-	private CotanCache m_cotanCache;
+	private CurvatureStore m_store;
+	private CornerAngles m_cornerAngles;
+	private Laplacian[] m_laplacians;
 	private boolean m_hasTensor;
+	/**
+	 * tensors as computed by computeCurvatureTensor, i.e. before any smoothing
+	 */
+	private double[] m_fittedTensors;
+	/**
+	 * flags of the store belonging to m_fittedTensors, smoothing also
+	 * assigns tensors to valid vertices whose tensor could not be fitted
+	 */
+	private byte[] m_fittedFlags;
+	/**
+	 * description of the smoothing steps applied to m_fittedTensors,
+	 * empty if the current tensors are not smoothened
+	 */
+	private String m_smoothing;
+	/**
+	 * smoothened tensors restored from a CurvatureCache, their flags and
+	 * the smoothing steps that lead to them, or null
+	 */
+	private double[] m_cachedSmoothedTensors;
+	private byte[] m_cachedSmoothedFlags;
+	private String m_cachedSmoothing;
+	private boolean m_restored;
+	private Precision m_precision;
+	/**
+	 * memoized scalar fields, indexed by CurvatureType, see scalarField()
+	 */
+	private double[][] m_scalarFields;
+	/**
+	 * memoized statistics of the scalar fields, see statistics()
+	 */
+	private FieldStatistics[] m_statistics;
+	/**
+	 * number of unique entries of a symmetric 3x3 tensor,
+	 * i.e. the upper triangle: xx, xy, xz, yy, yz, zz
+	 */
+	private static final int GLOBAL_TENSOR_SIZE = TensorKernels.GLOBAL_SIZE;
+	/**
+	 * relative residual and iteration limit of the CG solver for implicit smoothing
+	 */
+	private static final double IMPLICIT_TOLERANCE = 1E-10;
+	private static final int IMPLICIT_MAX_ITERATIONS = 1000;
+	/**
+	 * multigrid preconditioned CG iterations per step of multigrid smoothing
+	 */
+	private static final int MULTIGRID_ITERATIONS = 8;
 	public enum WeightingType {
 		Uniform,
 		Cord,
@@ -42,16 +86,65 @@ public class Curvature {
 	}
 	public enum SmoothingScheme {
 		ForwardEuler,
-		GaussSeidel
+		GaussSeidel,
+		// implicit, stable for large step sizes
+		BackwardEuler,
+		// Gauss-Seidel in parallel, one vertex color after the other
+		ColoredGaussSeidel,
+		// like BackwardEuler, but solved with a fixed number of multigrid iterations
+		Multigrid
+	}
+	/**
+	 * Floating point precision of the tensor field smoothing.
+	 *
+	 * With Float, the explicit schemes smooth single precision copies of the
+	 * tensors with single precision weights, which halves the memory traffic
+	 * of the smoothing loops and the memory of the temporary tensor arrays.
+	 * For stable step sizes, the result differs from Double by about 1E-7
+	 * relative to the largest tensor entry, which is invisible in the
+	 * visualization. Unstable step sizes overflow the float range earlier though.
+	 * The implicit schemes always use double precision, as their solver tolerance
+	 * is below float resolution. The stored tensors and mean curvature operators
+	 * stay in double precision as well, i.e. Float does not reduce the memory
+	 * of the CurvatureStore. See Ex2_1 for a check of the difference.
+	 *
+	 * The curvature values themselves are always computed in double precision:
+	 * the gaussian curvature is 2pi minus the sum of angles around a vertex,
+	 * which cancels out almost completely for flat regions.
+	 */
+	public enum Precision {
+		Double,
+		Float
+	}
+	/**
+	 * Scalar curvature quantities per vertex, see scalarField().
+	 */
+	public enum CurvatureType {
+		Mean,
+		Gaussian,
+		Minimum,
+		Maximum
 	}
 	public Curvature(PgElementSet geometry)
+	{
+		this(geometry, new CornerTable(geometry));
+		computeCurvature();
+	}
+	/**
+	 * Setup without computing anything, used to restore
+	 * previously computed results, see CurvatureCache.
+	 */
+	Curvature(PgElementSet geometry, CornerTable cornerTable)
 	{
 		m_geometry = geometry;
-		m_cornerTable = new CornerTable(m_geometry);
-		m_vertexMap = new VertexCurvature[geometry.getNumVertices()];
-		m_cotanCache = new CotanCache(m_cornerTable.size());
+		m_cornerTable = cornerTable;
+		m_store = new CurvatureStore(geometry.getNumVertices());
+		m_laplacians = new Laplacian[WeightingType.values().length];
+		m_scalarFields = new double[CurvatureType.values().length][];
+		m_statistics = new FieldStatistics[CurvatureType.values().length];
 		m_hasTensor = false;
-		computeCurvature();
+		m_smoothing = "";
+		m_precision = Precision.Double;
 	}
 	/**
 	 * @return Geometry for which the curvature was calculated
@@ -63,9 +156,9 @@ public class Curvature {
 	/**
 	 * @return curvature calculations for each vertex
 	 */
-	VertexCurvature[] curvatures()
+	CurvatureStore store()
 	{
-		return m_vertexMap;
+		return m_store;
 	}
 	/**
 	 * Returns true if the curvature tensor was computed, false otherwise.
@@ -74,209 +167,280 @@ public class Curvature {
 	{
 		return m_hasTensor;
 	}
-	public class VertexCurvature {
-		public VertexCurvature() {
-			area = 0;
-			meanOp = new PdVector(0, 0, 0);
-			gaussian = 0;
-			// not computed by default
-			B = null;
-		}
-		/**
-		 * mean curvature normal operator
-		 *
-		 * note: not normalized! i.e. misses 1/(2*area)
-		 * see eq. 8.
-		 **/
-		public PdVector meanOp;
-		/**
-		 * gaussian curvature Operator
-		 * note: not normalized! i.e. is just the sum of angles, misses (2pi - ...)/area
-		 * note: in degree!
-		 * @see gaussianCurvature()
-		 **/
-		public double gaussian;
-		/**
-		 * mixed area
-		 * see fig. 4
-		 */
-		public double area;
-		/**
-		 * Symmetric curvature tensor:
-		 *
-		 *  a | b
-		 * ---|---
-		 *  b | c
-		 */
-		public PdMatrix B;
-		public double gaussianCurvature() {
-			return (2.0d * Math.PI - Math.toRadians(gaussian)) / area;
-		}
-		public double meanCurvature() {
-			// note: 1/2 from K as vector, another 1/2 for K_H
-			return 1.0d / (4.0 * area) * meanOp.length();
-		}
-		public double minimumCurvature() {
-			return meanCurvature() - Math.sqrt(delta());
-		}
-		public double maximumCurvature() {
-			return meanCurvature() + Math.sqrt(delta());
+	/**
+	 * @return precision of smoothTensorField()
+	 */
+	public Precision precision()
+	{
+		return m_precision;
+	}
+	/**
+	 * Set the precision of subsequent smoothTensorField() calls.
+	 */
+	public void setPrecision(Precision precision)
+	{
+		m_precision = precision;
+	}
+	/**
+	 * @return corner table of the geometry
+	 */
+	CornerTable cornerTable()
+	{
+		return m_cornerTable;
+	}
+	/**
+	 * @return unsmoothened tensors, packed like CurvatureStore.tensors(),
+	 * or null if not computed
+	 */
+	double[] fittedTensors()
+	{
+		return m_fittedTensors;
+	}
+	/**
+	 * @return flags belonging to fittedTensors(), packed like
+	 * CurvatureStore.flags(), or null if not computed
+	 */
+	byte[] fittedFlags()
+	{
+		return m_fittedFlags;
+	}
+	/**
+	 * @return description of the smoothing steps applied to the current
+	 * tensors, empty if they are not smoothened
+	 */
+	String smoothing()
+	{
+		return m_smoothing;
+	}
+	/**
+	 * Restore tensors, see CurvatureCache.
+	 *
+	 * The current tensors are set to @p fitted, the vertices that have a
+	 * fitted tensor must already be flagged in the store. If @p smoothing is
+	 * not empty, @p smoothed and its flags @p smoothedFlags are kept and used
+	 * instead of actually smoothing when the same sequence of
+	 * smoothTensorField calls is done again.
+	 */
+	void restoreTensors(double[] fitted, String smoothing, double[] smoothed, byte[] smoothedFlags)
+	{
+		assert fitted.length == m_store.tensors().length;
+		System.arraycopy(fitted, 0, m_store.tensors(), 0, fitted.length);
+		m_fittedTensors = fitted;
+		m_fittedFlags = m_store.flags().clone();
+		m_smoothing = "";
+		m_hasTensor = true;
+		if (smoothing.length() > 0) {
+			assert smoothed.length == fitted.length;
+			assert smoothedFlags.length == m_store.size();
+			m_cachedSmoothing = smoothing;
+			m_cachedSmoothedTensors = smoothed;
+			m_cachedSmoothedFlags = smoothedFlags;
 		}
-		public double delta() {
-			return Math.max(0, Math.pow(meanCurvature(), 2) - gaussianCurvature());
+		m_restored = true;
+	}
+	/**
+	 * @return true if the tensors were restored and nothing was computed since
+	 * that is not part of the restored data, i.e. storing it again is pointless
+	 */
+	boolean isRestored()
+	{
+		return m_restored && (m_smoothing.length() == 0 || m_smoothing.equals(m_cachedSmoothing));
+	}
+	/**
+	 * Normalize the mean curvature operator of vertex @p i and return it.
+	 *
+	 * According to the paper by Meyer e.a. this is the
+	 * normal of the tangent plane.
+	 *
+	 * Returns null if mean curvature is zero.
+	 */
+	public PdVector tangentPlaneNormal(int i)
+	{
+		if (m_store.meanCurvature(i) == 0) {
+			return null;
 		}
-		/**
-		 * Normalize the mean curvature operator and return it.
-		 *
-		 * According to the paper by Meyer e.a. this is the
-		 * normal of the tangent plane.
-		 *
-		 * Returns null if mean curvature is zero.
-		 */
-		public PdVector tangentPlaneNormal()
-		{
-			if (meanCurvature() == 0) {
-				return null;
-			}
-			assert meanOp.length() > 0;
-			PdVector n = (PdVector) meanOp.clone();
-			n.normalize();
-			return n;
+		return new PdVector(m_store.normal(i, 0), m_store.normal(i, 1), m_store.normal(i, 2));
+	}
+	/**
+	 * Return matrix describing the tangent plane of vertex @p i.
+	 * 
+	 * Row 1: tangent plane normal
+	 * Row 2: arbitrary normal to tangent plane normal
+	 * Row 3: cross product of the other two vectors
+	 *
+	 * This is the frame of the local tensors, see TensorKernels.tangentFrame().
+	 *
+	 * Returns null if mean curvature is zero.
+	 */
+	public PdMatrix tangentPlane(int i)
+	{
+		double[] frame = new double[TensorKernels.FRAME_SIZE];
+		if (!TensorKernels.tangentFrame(m_store.meanOp(i, 0), m_store.meanOp(i, 1),
+										m_store.meanOp(i, 2), frame, 0)) {
+			return null;
 		}
-		/**
-		 * Return matrix describing the tangent plane.
-		 * 
-		 * Row 1: tangent plane normal
-		 * Row 2: arbitrary normal to tangent plane normal
-		 * Row 3: cross product of the other two vectors
-		 *
-		 * Returns null if mean curvature is zero.
-		 */
-		public PdMatrix tangentPlane()
-		{
-			if (meanCurvature() == 0) {
-				return null;
+		PdMatrix ret = new PdMatrix(3, 3);
+		for(int row = 0; row < 3; ++row) {
+			for(int col = 0; col < 3; ++col) {
+				ret.setEntry(row, col, frame[3 * row + col]);
 			}
-			PdVector n = tangentPlaneNormal();
-			PdVector x = PdVector.normalToVectorNew(n);
-			PdVector y = PdVector.crossNew(n, x);
-			PdMatrix ret = new PdMatrix(3, 3);
-			ret.setRow(0, n);
-			ret.setRow(1, x);
-			ret.setRow(2, y);
-			return ret;
-		}
-		/**
-		 * Find principle directions (in tangent plane) of
-		 * curvature tensor.
-		 *
-		 * See e.g.: http://www.math.harvard.edu/archive/21b_fall_04/exhibits/2dmatrices/index.html
-		 * 
-		 * Returned matrix has two rows:
-		 * Row 1: major principle direction
-		 * Row 2: minor principle direction
-		 */
-		public PdMatrix principleDirections()
-		{
-			return Curvature.principleDirections2x2(B);
 		}
-		/**
-		 * Scale local 2x2 curvature tensor up to global 3x3 frame
-		 * and return it.
-		 * 
-		 * @return curvature tensor in global 3x3 frame
-		 */
-		public PdMatrix globalCurvature()
-		{
-			assert B.getNumCols() == 2;
-			assert B.getNumRows() == 2;
-			PdMatrix tangentPlane = tangentPlane();
-			PdVector x = tangentPlane.getRow(1);
-			PdVector y = tangentPlane.getRow(2);
-			return Curvature.toGlobalTensor(B, x, y);
+		return ret;
+	}
+	/**
+	 * @return 2x2 curvature tensor of vertex @p i in the local frame
+	 * of its tangent plane, or null if it was not computed
+	 */
+	public PdMatrix tensor(int i)
+	{
+		if (!m_store.hasTensor(i)) {
+			return null;
 		}
+		PdMatrix B = new PdMatrix(2, 2);
+		B.setEntry(0, 0, m_store.tensor(i, 0));
+		B.setEntry(0, 1, m_store.tensor(i, 1));
+		B.setEntry(1, 0, m_store.tensor(i, 1));
+		B.setEntry(1, 1, m_store.tensor(i, 2));
+		return B;
+	}
+	/**
+	 * Find principle directions (in tangent plane) of
+	 * curvature tensor of vertex @p i.
+	 *
+	 * See e.g.: http://www.math.harvard.edu/archive/21b_fall_04/exhibits/2dmatrices/index.html
+	 * 
+	 * Returned matrix has two rows:
+	 * Row 1: major principle direction
+	 * Row 2: minor principle direction
+	 */
+	public PdMatrix principleDirections(int i)
+	{
+		return Curvature.principleDirections2x2(tensor(i));
+	}
+	/**
+	 * Scale local 2x2 curvature tensor of vertex @p i up to
+	 * global 3x3 frame and return it.
+	 * 
+	 * @return curvature tensor in global 3x3 frame
+	 */
+	public PdMatrix globalCurvature(int i)
+	{
+		PdMatrix tangentPlane = tangentPlane(i);
+		PdVector x = tangentPlane.getRow(1);
+		PdVector y = tangentPlane.getRow(2);
+		return Curvature.toGlobalTensor(tensor(i), x, y);
 	}
 	/**
 	 * Compute tensor fields for given @param geometry, reusing previously
 	 * calculated curvature and corner table.
 	 *
-	 * Results are stored in the curvature objects (see Curvature::B).
+	 * Results are stored in the CurvatureStore, see CurvatureStore.tensor().
 	 */
 	public void computeCurvatureTensor()
 	{
 		System.out.println("Computing curvature tensor for " + m_geometry.getName());
-		Set<Integer> visitedVertices = new HashSet<Integer>(m_geometry.getNumVertices());
-		for (Corner corner : m_cornerTable.corners()) {
-			if (!visitedVertices.add(corner.vertex)) {
-				// vertex already handled
-				continue;
-			}
-			VertexCurvature curve = m_vertexMap[corner.vertex];
-			if (curve == null) {
-				continue;
-			}
-			// now we find all neighbors and compute:
-			// \kappa_{i,j}^N (see page 13)
-			// \vec{\delta_{i,j}} (see page 14)
-			PdVector x_i = m_geometry.getVertex(corner.vertex);
-			PdMatrix tangentPlane = curve.tangentPlane();
-			if (tangentPlane == null) {
-				System.err.println("skipping zero mean curvature at vertex: " + x_i + ", index: " + corner.vertex);
-				continue;
-			}
-			PdVector n = tangentPlane.getRow(0);
-			PdVector t1 = tangentPlane.getRow(1);
-			PdVector t2 = tangentPlane.getRow(2);
-			ArrayList<Double> kappas = new ArrayList<Double>(5);
-			ArrayList<PdVector> deltas = new ArrayList<PdVector>(5);
-			for(Corner neighbor : corner.vertexNeighbors()) {
-				int j = neighbor.vertex;
-				PdVector x_j = m_geometry.getVertex(j);
-				// x_i - x_j
-				PdVector e = PdVector.subNew(x_i, x_j);
-				double e_dot_n = e.dot(n);
-				kappas.add(2.0d * e_dot_n / e.sqrLength());
-				// (e*n)n - e
-				PdVector delta = PdVector.blendNew(e_dot_n, n, -1.0d, e);
-				// ... / |(e*n)n-e|
-				delta.normalize();
-				// now compute coordinates in plane by dotting to t1, t2
-				deltas.add(new PdVector(t1.dot(delta), t2.dot(delta)));
-			}
-			assert kappas.size() == deltas.size();
-			// prepare A x = b, we look for the solution x
-			// each row is: d1^2 2d1d2 d2^2, with d1,d2 being the coeffs of delta_{i,j}
-			PdMatrix A = new PdMatrix(kappas.size(), 3);
-			// kappas
-			PdVector b = new PdVector(kappas.size());
-			for(int i = 0; i < kappas.size(); ++i) {
-				PdVector delta = deltas.get(i);
-				double d1 = delta.getEntry(0);
-				double d2 = delta.getEntry(1);
-				A.setEntry(i, 0, d1 * d1);
-				A.setEntry(i, 1, 2.0d * d1 * d2);
-				A.setEntry(i, 2, d2 * d2);
-				b.setEntry(i,  kappas.get(i));
+		final OneRing ring = m_cornerTable.oneRing();
+		// each vertex is fitted independently and only writes its own tensor,
+		// hence the results do not depend on the number of threads
+		Parallel.forEachChunk(m_store.size(), new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				for(int i = begin; i < end; ++i) {
+					if (m_store.isValid(i)) {
+						fitTensor(i, ring);
+					}
+				}
 			}
-			PdMatrix A_T = new PdMatrix(3, kappas.size());
-			A_T.transpose(A);
-			PdMatrix K = new PdMatrix();
-			K.mult(A_T, A);
-			PdVector R = new PdVector();
-			R.leftMultMatrix(A_T, b);
-			// now apply cramer's rule
-			PdVector x = solveCramer(K, R);
-			// build curvature matrix
-			PdMatrix B = new PdMatrix(2, 2);
-			curve.B = B;
-			B.setEntry(0, 0, x.getEntry(0));
-			B.setEntry(0, 1, x.getEntry(1));
-			B.setEntry(1, 0, x.getEntry(1));
-			B.setEntry(1, 1, x.getEntry(2));
-		}
+		});
+		m_fittedTensors = m_store.tensors().clone();
+		m_fittedFlags = m_store.flags().clone();
+		m_smoothing = "";
 		System.out.println("done");
 		m_hasTensor = true;
 	}
+	/**
+	 * Fit the curvature tensor of vertex @p i to the normal curvatures
+	 * along the edges to its neighbors in @p ring, see computeCurvatureTensor().
+	 */
+	private void fitTensor(int i, OneRing ring)
+	{
+		// now we find all neighbors and compute:
+		// \kappa_{i,j}^N (see page 13)
+		// \vec{\delta_{i,j}} (see page 14)
+		PdVector x_i = m_geometry.getVertex(i);
+		PdMatrix tangentPlane = tangentPlane(i);
+		if (tangentPlane == null) {
+			System.err.println("skipping zero mean curvature at vertex: " + x_i + ", index: " + i);
+			return;
+		}
+		final double n0 = tangentPlane.getEntry(0, 0);
+		final double n1 = tangentPlane.getEntry(0, 1);
+		final double n2 = tangentPlane.getEntry(0, 2);
+		final double t10 = tangentPlane.getEntry(1, 0);
+		final double t11 = tangentPlane.getEntry(1, 1);
+		final double t12 = tangentPlane.getEntry(1, 2);
+		final double t20 = tangentPlane.getEntry(2, 0);
+		final double t21 = tangentPlane.getEntry(2, 1);
+		final double t22 = tangentPlane.getEntry(2, 2);
+		// we look for the least squares solution x of A x = b,
+		// each row of A is: d1^2 2d1d2 d2^2, with d1,d2 being the coeffs of delta_{i,j}
+		// and b are the kappas. Instead of building A, we directly accumulate
+		// the normal equations A^T A x = A^T b, i.e. the symmetric K and R:
+		double k00 = 0, k01 = 0, k02 = 0, k11 = 0, k12 = 0, k22 = 0;
+		double r0 = 0, r1 = 0, r2 = 0;
+		for(int k = ring.begin(i); k < ring.end(i); ++k) {
+			PdVector x_j = m_geometry.getVertex(ring.vertex(k));
+			// x_i - x_j
+			final double e0 = x_i.getEntry(0) - x_j.getEntry(0);
+			final double e1 = x_i.getEntry(1) - x_j.getEntry(1);
+			final double e2 = x_i.getEntry(2) - x_j.getEntry(2);
+			final double e_dot_n = e0 * n0 + e1 * n1 + e2 * n2;
+			final double kappa = 2.0d * e_dot_n / (e0 * e0 + e1 * e1 + e2 * e2);
+			// (e*n)n - e
+			double delta0 = e_dot_n * n0 - e0;
+			double delta1 = e_dot_n * n1 - e1;
+			double delta2 = e_dot_n * n2 - e2;
+			// ... / |(e*n)n-e|
+			final double length = Math.sqrt(delta0 * delta0 + delta1 * delta1 + delta2 * delta2);
+			if (length != 0) {
+				delta0 /= length;
+				delta1 /= length;
+				delta2 /= length;
+			}
+			// now compute coordinates in plane by dotting to t1, t2
+			final double d1 = t10 * delta0 + t11 * delta1 + t12 * delta2;
+			final double d2 = t20 * delta0 + t21 * delta1 + t22 * delta2;
+			final double a0 = d1 * d1;
+			final double a1 = 2.0d * d1 * d2;
+			final double a2 = d2 * d2;
+			k00 += a0 * a0;
+			k01 += a0 * a1;
+			k02 += a0 * a2;
+			k11 += a1 * a1;
+			k12 += a1 * a2;
+			k22 += a2 * a2;
+			r0 += a0 * kappa;
+			r1 += a1 * kappa;
+			r2 += a2 * kappa;
+		}
+		// now apply cramer's rule
+		final double c00 = k11 * k22 - k12 * k12;
+		final double c01 = k02 * k12 - k01 * k22;
+		final double c02 = k01 * k12 - k02 * k11;
+		final double det = k00 * c00 + k01 * c01 + k02 * c02;
+		if (det == 0) {
+			// e.g. all neighbors in one direction, the tensor is underdetermined
+			System.err.println("skipping singular curvature tensor at vertex: " + x_i + ", index: " + i);
+			m_store.clearTensor(i);
+			return;
+		}
+		final double x0 = (c00 * r0 + c01 * r1 + c02 * r2) / det;
+		final double x1 = (c01 * r0 + (k00 * k22 - k02 * k02) * r1 + (k01 * k02 - k00 * k12) * r2) / det;
+		final double x2 = (c02 * r0 + (k01 * k02 - k00 * k12) * r1 + (k00 * k11 - k01 * k01) * r2) / det;
+		// build curvature matrix
+		m_store.setTensor(i, x0, x1, x2);
+	}
 	/**
 	 * Compute tensor fields for given @param geometry, reusing previously
 	 * calculated curvature tensor in @param curvature and the given corner table.
@@ -296,57 +460,181 @@ public class Curvature {
 		}
 		System.out.println("computing principle curvature directions of " + m_geometry.getName());
 
-		PgVectorField[] ret = new PgVectorField[4];
-
-		PgVectorField max = new PgVectorField(3);
-		max.setGlobalVectorColor(Color.red);
-		max.showIndividualMaterial(true);
-		max.setGlobalVectorLength(0.01);
-		max.setName("+max");
-		max.setBasedOn(PgVectorField.VERTEX_BASED);
-		max.setNumVectors(m_geometry.getNumVertices());
-		ret[0] = max;
-
-		PgVectorField min = new PgVectorField(3);
-		min.setGlobalVectorColor(Color.blue);
-		min.showIndividualMaterial(true);
-		min.setGlobalVectorLength(0.01);
-		min.setName("+min");
-		min.setBasedOn(PgVectorField.VERTEX_BASED);
-		min.setNumVectors(m_geometry.getNumVertices());
-		ret[1] = min;
-
-		for (int i = 0; i < m_vertexMap.length; ++i) {
-			VertexCurvature curve = m_vertexMap[i];
-			if (curve == null || curve.B == null) {
-				continue;
+		final int n = m_store.size();
+		final PgVectorField[] ret = new PgVectorField[] {
+			createDirectionField("+max", Color.red, n),
+			createDirectionField("+min", Color.blue, n),
+			createDirectionField("-max", Color.red, n),
+			createDirectionField("-min", Color.blue, n)
+		};
+		// note: JavaView draws the vectors as stored, hence the negated
+		// fields need their own vectors, but all four are written at once
+		final PdVector[] max = ret[0].getVectors();
+		final PdVector[] min = ret[1].getVectors();
+		final PdVector[] maxNeg = ret[2].getVectors();
+		final PdVector[] minNeg = ret[3].getVectors();
+		final double[] frames = new double[TensorKernels.FRAME_SIZE * n];
+		final double[] directions = new double[TensorKernels.DIRECTIONS_SIZE * n];
+		Parallel.forEachChunk(n, new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				// principal directions in the tangent planes
+				TensorKernels.tangentFrames(m_store.meanOps(), frames, begin, end);
+				TensorKernels.principalDirections(m_store.tensors(), directions, begin, end);
+				for (int i = begin; i < end; ++i) {
+					if (!m_store.hasTensor(i)) {
+						continue;
+					}
+					// now scale up to 3d for display
+					final int f = TensorKernels.FRAME_SIZE * i;
+					final int d = TensorKernels.DIRECTIONS_SIZE * i;
+					for(int k = 0; k < 3; ++k) {
+						final double x = frames[f + 3 + k];
+						final double y = frames[f + 6 + k];
+						final double maxDir = directions[d] * x + directions[d + 1] * y;
+						final double minDir = directions[d + 2] * x + directions[d + 3] * y;
+						max[i].setEntry(k, maxDir);
+						min[i].setEntry(k, minDir);
+						maxNeg[i].setEntry(k, -maxDir);
+						minNeg[i].setEntry(k, -minDir);
+					}
+				}
 			}
-			// now scale up to 3d for display
-			PdMatrix p = curve.principleDirections();
-			PdVector major = p.getRow(0);
-			PdVector minor = p.getRow(1);
-			PdMatrix plane = curve.tangentPlane();
-			PdVector x = plane.getRow(1);
-			PdVector y = plane.getRow(2);
-			PdVector minDir = PdVector.blendNew(minor.getEntry(0), x, minor.getEntry(1), y);
-			PdVector maxDir = PdVector.blendNew(major.getEntry(0), x, major.getEntry(1), y);
-			min.setVector(i, minDir);
-			max.setVector(i, maxDir);
-		}
-
-		PgVectorField maxNeg = (PgVectorField) max.clone();
-		maxNeg.multScalar(-1);
-		maxNeg.setName("-max");
-		ret[2] = maxNeg;
-		PgVectorField minNeg = (PgVectorField) min.clone();
-		minNeg.multScalar(-1);
-		minNeg.setName("-min");
-		ret[3] = minNeg;
+		});
 
 		System.out.println("done");
 
 		return ret;
 	}
+	/**
+	 * @return vertex based vector field with @p numVectors zero vectors
+	 */
+	private static PgVectorField createDirectionField(String name, Color color, int numVectors)
+	{
+		PgVectorField field = new PgVectorField(3);
+		field.setGlobalVectorColor(color);
+		field.showIndividualMaterial(true);
+		field.setGlobalVectorLength(0.01);
+		field.setName(name);
+		field.setBasedOn(PgVectorField.VERTEX_BASED);
+		field.setNumVectors(numVectors);
+		return field;
+	}
+	/**
+	 * Update the curvature after the positions of the vertices in
+	 * @p modified were changed, e.g. while sculpting. The connectivity
+	 * must not change.
+	 *
+	 * The curvature of a vertex only depends on the positions of its
+	 * one-ring, as does its fitted tensor, hence only the modified
+	 * vertices and their neighbors are recomputed. Smoothing is not local,
+	 * hence afterwards the tensors are the unsmoothened ones and
+	 * smoothTensorField() has to be called again if required.
+	 */
+	public void updateVertices(int[] modified)
+	{
+		final OneRing ring = m_cornerTable.oneRing();
+		final int[] offsets = m_cornerTable.incidentCornerOffsets();
+		final int[] corners = m_cornerTable.incidentCorners();
+		// mark the modified vertices and their neighbors
+		boolean[] isAffected = new boolean[m_store.size()];
+		int numAffected = 0;
+		int numModifiedCorners = 0;
+		for(int v : modified) {
+			numModifiedCorners += 3 * (offsets[v + 1] - offsets[v]);
+			if (!isAffected[v]) {
+				isAffected[v] = true;
+				++numAffected;
+			}
+			for(int k = ring.begin(v); k < ring.end(v); ++k) {
+				final int j = ring.vertex(k);
+				if (!isAffected[j]) {
+					isAffected[j] = true;
+					++numAffected;
+				}
+			}
+		}
+		// the angles of all triangles around modified vertices have changed
+		int[] modifiedCorners = new int[numModifiedCorners];
+		int size = 0;
+		for(int v : modified) {
+			for(int k = offsets[v]; k < offsets[v + 1]; ++k) {
+				final int c = corners[k];
+				modifiedCorners[size++] = c;
+				modifiedCorners[size++] = m_cornerTable.next(c);
+				modifiedCorners[size++] = m_cornerTable.prev(c);
+			}
+		}
+		final CornerAngles angles = cornerAngles();
+		angles.update(modifiedCorners);
+		// the weights of the Laplacians depend on the angles and edge lengths
+		Arrays.fill(m_laplacians, null);
+		invalidateScalarFields();
+
+		final int[] affected = new int[numAffected];
+		size = 0;
+		for(int v = 0; v < isAffected.length; ++v) {
+			if (isAffected[v]) {
+				affected[size++] = v;
+			}
+		}
+		System.out.println("updating curvature of " + affected.length + " vertices");
+		// like computeCurvature(), each affected vertex sums up its corners in order
+		final boolean[] blackList = new boolean[m_store.size()];
+		Parallel.forEachChunk(affected.length, new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				for(int l = begin; l < end; ++l) {
+					final int v = affected[l];
+					m_store.invalidate(v);
+					for(int k = offsets[v]; k < offsets[v + 1]; ++k) {
+						addCornerContribution(corners[k], angles, blackList);
+					}
+				}
+			}
+		});
+		for(int v : affected) {
+			if (blackList[v]) {
+				m_store.invalidate(v);
+			}
+		}
+		// neither the cached nor the restored results are valid anymore
+		m_cachedSmoothedTensors = null;
+		m_cachedSmoothedFlags = null;
+		m_cachedSmoothing = null;
+		m_restored = false;
+		if (!m_hasTensor) {
+			return;
+		}
+		final double[] tensors = m_store.tensors();
+		final byte[] flags = m_store.flags();
+		// drop smoothing, the unaffected vertices go back to their fitted tensors
+		System.arraycopy(m_fittedTensors, 0, tensors, 0, tensors.length);
+		for(int v = 0; v < flags.length; ++v) {
+			if (!isAffected[v]) {
+				flags[v] = m_fittedFlags[v];
+			}
+		}
+		Parallel.forEachChunk(affected.length, new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				for(int l = begin; l < end; ++l) {
+					final int v = affected[l];
+					// drop the stale tensor copied back above, in case it cannot be fitted anymore
+					m_store.clearTensor(v);
+					if (m_store.isValid(v)) {
+						fitTensor(v, ring);
+					}
+					System.arraycopy(tensors, 3 * v, m_fittedTensors, 3 * v, 3);
+					m_fittedFlags[v] = flags[v];
+				}
+			}
+		});
+		m_smoothing = "";
+	}
 	/**
 	 * compute curvature values of each vertex in m_geometry
 	 */
@@ -365,192 +653,377 @@ public class Curvature {
 		// can only sum parts of the voronoi cell up at each time
 		// the e.q. for that is given in sec. 3.3 on page 8
 		// for bad geometries, like the hand
-		HashSet<Integer> blackList = new HashSet<Integer>();
-		for(Corner corner : m_cornerTable.corners()) {
-			Corner cno = corner.next.opposite;
-			if (cno == null) {
-				///TODO: what to do in such cases?
-				continue;
+		final boolean[] blackList = new boolean[m_store.size()];
+		// each vertex sums up the contributions of its corners in ascending
+		// order, hence the results do not depend on the number of threads
+		final int[] offsets = m_cornerTable.incidentCornerOffsets();
+		final int[] corners = m_cornerTable.incidentCorners();
+		final CornerAngles angles = cornerAngles();
+		Parallel.forEachChunk(m_store.size(), new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				for(int v = begin; v < end; ++v) {
+					for(int k = offsets[v]; k < offsets[v + 1]; ++k) {
+						addCornerContribution(corners[k], angles, blackList);
+					}
+				}
+			}
+		});
+		for(int i = 0; i < blackList.length; ++i) {
+			if (blackList[i]) {
+				m_store.invalidate(i);
 			}
+		}
+		System.out.println("done");
+	}
+	/**
+	 * Add the contribution of @p corner to the curvature of its vertex,
+	 * see computeCurvature(). Only the values of corner.vertex are modified.
+	 *
+	 * Vertices of degenerated triangles are marked in @p blackList.
+	 */
+	private void addCornerContribution(int corner, CornerAngles angles, boolean[] blackList)
+	{
+		final int next = m_cornerTable.next(corner);
+		final int prev = m_cornerTable.prev(corner);
+		final int cno = m_cornerTable.opposite(next);
+		if (cno == CornerTable.NONE) {
+			///TODO: what to do in such cases?
+			return;
+		}
+		final int triangle = m_cornerTable.triangle(corner);
+		final int vertex = m_cornerTable.vertex(corner);
 
-			//note: alpha, beta, gamma are all in corner.triangle
-			//note: all values are apparently in degrees!
-			// alpha: angle at x_i in T, between AB and AC
-			// compare to angle(P) in paper
-			double alpha = m_geometry.getVertexAngle(corner.triangle, corner.localVertexIndex);
-			// beta: angle at prev corner, between AB and BC
-			// compare to angle(Q)
-			double beta = m_geometry.getVertexAngle(corner.triangle, corner.prev.localVertexIndex);
-			// gamma: angle at next corner, between AC and BC
-			// compare to angle(R)
-			double gamma = m_geometry.getVertexAngle(corner.triangle, corner.next.localVertexIndex);
+		//note: alpha, beta, gamma are all in corner.triangle
+		//note: all values are apparently in degrees!
+		// alpha: angle at x_i in T, between AB and AC
+		// compare to angle(P) in paper
+		double alpha = angles.angle(corner);
+		// beta: angle at prev corner, between AB and BC
+		// compare to angle(Q)
+		double beta = angles.angle(prev);
+		// gamma: angle at next corner, between AC and BC
+		// compare to angle(R)
+		double gamma = angles.angle(next);
 
-			if (alpha == 0 || beta == 0 || gamma == 0) {
-				System.err.println("Zero-angle encountered in triangle, skipping: " + corner.triangle);
-				blackList.add(corner.vertex);
-				blackList.add(corner.prev.vertex);
-				blackList.add(corner.next.vertex);
-				continue;
-			}
-			
-			double cotGamma = m_cotanCache.cotan(gamma);
+		if (alpha == 0 || beta == 0 || gamma == 0) {
+			System.err.println("Zero-angle encountered in triangle, skipping: " + triangle);
+			blackList[vertex] = true;
+			blackList[m_cornerTable.vertex(prev)] = true;
+			blackList[m_cornerTable.vertex(next)] = true;
+			return;
+		}
+		
+		double cotGamma = angles.cotan(next);
 
-			// edge between A and B, angle is beta
-			// compare to PQ
-			PdVector AB = PdVector.subNew(m_geometry.getVertex(corner.vertex),
-											m_geometry.getVertex(corner.prev.vertex));
+		// edge between A and B, angle is beta
+		// compare to PQ
+		PdVector AB = PdVector.subNew(m_geometry.getVertex(vertex),
+										m_geometry.getVertex(m_cornerTable.vertex(prev)));
 
-			double area = -1;
-			// check for obtuse angle
-			if (alpha >= 90 || beta >= 90 || gamma >= 90) {
-				area = m_geometry.getAreaOfElement(corner.triangle);
-				assert area > 0;
-				// check if angle of T at x is obtuse
-				if (alpha > 90) {
-					area /= 2.0d;
-				} else {
-					area /= 4.0d;
-				}
+		double area = -1;
+		// check for obtuse angle
+		if (alpha >= 90 || beta >= 90 || gamma >= 90) {
+			area = m_geometry.getAreaOfElement(triangle);
+			assert area > 0;
+			// check if angle of T at x is obtuse
+			if (angles.isObtuse(corner)) {
+				area /= 2.0d;
 			} else {
-				// voronoi region of x in t:
-				// edge between A and C, angle is gamma
-				// compare to PR
-				PdVector AC = PdVector.subNew(m_geometry.getVertex(corner.vertex),
-												m_geometry.getVertex(corner.next.vertex));
-				double cotBeta = m_cotanCache.cotan(beta);
-				area = 1.0d/8.0d * (AB.sqrLength() * cotGamma + AC.sqrLength() * cotBeta);
-				assert area > 0;
+				area /= 4.0d;
 			}
-
-			VertexCurvature cache = m_vertexMap[corner.vertex];
-			if (cache == null) {
-				cache = new VertexCurvature();
-				m_vertexMap[corner.vertex] = cache;
-			}
-			// now e.q. 8, with alpha = our gamma from above, and beta = cnoAngle
-			double cnoAngle = m_geometry.getVertexAngle(cno.triangle, cno.localVertexIndex);
-			if (cnoAngle == 0) {
-				System.err.println("Zero-Angle encountered in triangle " + cno.triangle + ", vertex: " + corner.vertex);
-				blackList.add(corner.vertex);
-				continue;
-			}
-			double cotCnoAngle = m_cotanCache.cotan(cnoAngle);
-			cache.meanOp.add(cotGamma + cotCnoAngle, AB);
-			cache.gaussian += alpha;
-			cache.area += area;
+		} else {
+			// voronoi region of x in t:
+			// edge between A and C, angle is gamma
+			// compare to PR
+			PdVector AC = PdVector.subNew(m_geometry.getVertex(vertex),
+											m_geometry.getVertex(m_cornerTable.vertex(next)));
+			double cotBeta = angles.cotan(prev);
+			area = 1.0d/8.0d * (AB.sqrLength() * cotGamma + AC.sqrLength() * cotBeta);
+			assert area > 0;
 		}
-		for(int i : blackList) {
-			m_vertexMap[i] = null;
+
+		m_store.setValid(vertex);
+		// now e.q. 8, with alpha = our gamma from above, and beta = cnoAngle
+		double cnoAngle = angles.angle(cno);
+		if (cnoAngle == 0) {
+			System.err.println("Zero-Angle encountered in triangle " + m_cornerTable.triangle(cno) + ", vertex: " + vertex);
+			blackList[vertex] = true;
+			return;
 		}
-		System.out.println("done");
+		double cotCnoAngle = angles.cotan(cno);
+		m_store.addCorner(vertex, cotGamma + cotCnoAngle,
+							AB.getEntry(0), AB.getEntry(1), AB.getEntry(2), alpha, area);
 	}
 	/**
-	 * Smoothen tensor field @param curvature, new values will be stored in Curvate.B
+	 * Smoothen tensor field @param curvature, new values will be stored in the CurvatureStore
 	 *
 	 * @param geometry
 	 * @param cornerTable precomputed corner table for @param geometry
 	 * @param curvature precomputed
-	 * @param steps number of smoothing steps, must be greater than one
+	 * @param steps number of smoothing steps, must be greater than zero
 	 * @param stepSize \Delta t, i.e. integration step size, must be greater zero
 	 */
 	public void smoothTensorField(int steps, double stepSize, WeightingType weightingType,
 									SmoothingScheme scheme)
 	{
 		System.out.println("Smoothening curvature tensor field. steps: " + steps + ", step size: " + stepSize);
-		assert steps > 1;
+		assert steps > 0;
 		assert stepSize > 0;
-		// project local 2x2 tensors into 3x3 space
-		PdMatrix[] globalTensors = new PdMatrix[m_vertexMap.length];
-		for(int i = 0; i < m_vertexMap.length; ++i) {
-			VertexCurvature curve = m_vertexMap[i];
-			if (curve == null || curve.B == null) {
-				globalTensors[i] = new PdMatrix(3, 3);
-				continue;
-			}
-			globalTensors[i] = curve.globalCurvature();
+		final boolean singlePrecision = m_precision == Precision.Float
+										&& (scheme == SmoothingScheme.ForwardEuler
+											|| scheme == SmoothingScheme.GaussSeidel
+											|| scheme == SmoothingScheme.ColoredGaussSeidel);
+		final String smoothing = m_smoothing + steps + "," + stepSize + ","
+									+ weightingType + "," + scheme
+									+ (singlePrecision ? "," + Precision.Float : "") + ";";
+		if (m_cachedSmoothedTensors != null && smoothing.equals(m_cachedSmoothing)) {
+			System.out.println("reusing cached result");
+			System.arraycopy(m_cachedSmoothedTensors, 0, m_store.tensors(), 0,
+								m_cachedSmoothedTensors.length);
+			System.arraycopy(m_cachedSmoothedFlags, 0, m_store.flags(), 0,
+								m_cachedSmoothedFlags.length);
+			m_smoothing = smoothing;
+			return;
 		}
+		// project local 2x2 tensors into 3x3 space,
+		// only the upper triangle is stored as the tensors are symmetric
+		final int n = m_store.size();
+		final double[] frames = new double[TensorKernels.FRAME_SIZE * n];
+		final double[] packedTensors = new double[GLOBAL_TENSOR_SIZE * n];
+		Parallel.forEachChunk(n, new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				TensorKernels.tangentFrames(m_store.meanOps(), frames, begin, end);
+				TensorKernels.toGlobal(frames, m_store.tensors(), packedTensors, begin, end);
+				final double[] tensors = m_store.tensors();
+				for(int i = begin; i < end; ++i) {
+					// a single non-finite tensor would spread over the whole field
+					if (!m_store.hasTensor(i) || !Utils.isFinite(tensors[3 * i])
+						|| !Utils.isFinite(tensors[3 * i + 1]) || !Utils.isFinite(tensors[3 * i + 2])) {
+						Arrays.fill(packedTensors, GLOBAL_TENSOR_SIZE * i, GLOBAL_TENSOR_SIZE * (i + 1), 0);
+					}
+				}
+			}
+		});
+		double[] globalTensors = packedTensors;
 		// smooth global tensors
-		for(int step = 0; step < steps; ++step) {
-			PdMatrix[] smoothened = new PdMatrix[globalTensors.length];
-			HashSet<Integer> visitedVertices = new HashSet<Integer>(globalTensors.length);
-			// explicit method for now
-			for(Corner c : m_cornerTable.corners()) {
-				if (!visitedVertices.add(c.vertex)) {
-					// already visited
-					continue;
+		Laplacian laplacian = laplacian(weightingType);
+		if (singlePrecision) {
+			final float[] values = new float[globalTensors.length];
+			Parallel.forEachChunk(n, new Parallel.Loop() {
+				@Override
+				public void run(int chunk, int begin, int end)
+				{
+					for(int k = GLOBAL_TENSOR_SIZE * begin; k < GLOBAL_TENSOR_SIZE * end; ++k) {
+						values[k] = (float) packedTensors[k];
+					}
 				}
-				int i = c.vertex;
-				PdMatrix sum = PdMatrix.copyNew(globalTensors[i]);
-				PdVector x_i = m_geometry.getVertex(i);
-				for(Corner neighbor : c.vertexNeighbors()) {
-					int j = neighbor.vertex;
-					assert i != j;
-					Double weight = null;
-					switch (weightingType) {
-					case Uniform:
-						weight = 1.0d;
-						break;
-					case Cord:
-						weight = 1.0d / PdVector.subNew(x_i, m_geometry.getVertex(j)).length();
-						break;
-					case Cotangent:
-						assert neighbor.prev.vertex != i;
-						assert neighbor.prev.opposite != null;
-						double theta_1 = m_cotanCache.cotan(
-								m_geometry.getVertexAngle(neighbor.prev.triangle,
-														neighbor.prev.localVertexIndex));
-						double theta_2 = m_cotanCache.cotan(
-								m_geometry.getVertexAngle(neighbor.prev.opposite.triangle,
-														neighbor.prev.opposite.localVertexIndex));
-						weight = (theta_1 + theta_2) * 0.5d;
-						break;
-					case MeanValue:
-						assert neighbor.prev.vertex != i;
-						assert neighbor.next.vertex == i;
-						double phi_1 = m_cotanCache.tan(
-								m_geometry.getVertexAngle(neighbor.next.triangle,
-														neighbor.next.localVertexIndex));
-						assert neighbor.prev.opposite != null;
-						assert neighbor.prev.opposite.next.vertex == i;
-						double phi_2 = m_cotanCache.tan(
-								m_geometry.getVertexAngle(neighbor.prev.opposite.next.triangle,
-														neighbor.prev.opposite.next.localVertexIndex));
-						weight = (phi_1 + phi_2) * 0.5d;
-						break;
+			});
+			final float[] smoothened = smoothSinglePrecision(values, steps, stepSize, laplacian, scheme);
+			Parallel.forEachChunk(n, new Parallel.Loop() {
+				@Override
+				public void run(int chunk, int begin, int end)
+				{
+					for(int k = GLOBAL_TENSOR_SIZE * begin; k < GLOBAL_TENSOR_SIZE * end; ++k) {
+						packedTensors[k] = smoothened[k];
 					}
-					assert weight != null;
-					weight *= stepSize;
-					PdMatrix term = PdMatrix.copyNew(
-						scheme == SmoothingScheme.ForwardEuler ? globalTensors[j]
-							// Gauss-Seidel, use current i.e. potentially smoothened
-							: (smoothened[j] == null ? globalTensors[j] : smoothened[j])
-					);
-					term.sub(globalTensors[i]);
-					term.multScalar(weight);
-					sum.add(term);
 				}
-				// note: must not overwrite old values
-				smoothened[i] = sum;
+			});
+		} else if (scheme == SmoothingScheme.ForwardEuler) {
+			// note: must not overwrite old values
+			double[] smoothened = new double[globalTensors.length];
+			for(int step = 0; step < steps; ++step) {
+				laplacian.smooth(globalTensors, smoothened, GLOBAL_TENSOR_SIZE, stepSize);
+				// for the next step, use the "new" smoothened values as "old"
+				double[] tmp = globalTensors;
+				globalTensors = smoothened;
+				smoothened = tmp;
+			}
+		} else if (scheme == SmoothingScheme.GaussSeidel) {
+			// use current i.e. potentially smoothened values of neighbors
+			for(int step = 0; step < steps; ++step) {
+				laplacian.smooth(globalTensors, globalTensors, GLOBAL_TENSOR_SIZE, stepSize);
+			}
+		} else if (scheme == SmoothingScheme.ColoredGaussSeidel) {
+			int[] colorOffsets = m_cornerTable.colorOffsets();
+			int[] coloredVertices = m_cornerTable.coloredVertices();
+			for(int step = 0; step < steps; ++step) {
+				laplacian.smoothColored(globalTensors, GLOBAL_TENSOR_SIZE, stepSize,
+										colorOffsets, coloredVertices);
+			}
+		} else if (scheme == SmoothingScheme.Multigrid) {
+			Multigrid multigrid = new Multigrid(laplacian, stepSize);
+			double[] smoothened = new double[globalTensors.length];
+			for(int step = 0; step < steps; ++step) {
+				System.arraycopy(globalTensors, 0, smoothened, 0, globalTensors.length);
+				double residual = multigrid.solve(globalTensors, smoothened, GLOBAL_TENSOR_SIZE,
+													MULTIGRID_ITERATIONS);
+				System.out.println("step " + step + ": relative residual " + residual
+									+ " on " + multigrid.numLevels() + " levels");
+				double[] tmp = globalTensors;
+				globalTensors = smoothened;
+				smoothened = tmp;
+			}
+		} else {
+			assert scheme == SmoothingScheme.BackwardEuler;
+			double[] smoothened = new double[globalTensors.length];
+			for(int step = 0; step < steps; ++step) {
+				int iterations = laplacian.solveImplicit(globalTensors, smoothened, GLOBAL_TENSOR_SIZE,
+															stepSize, IMPLICIT_TOLERANCE,
+															IMPLICIT_MAX_ITERATIONS);
+				System.out.println("step " + step + ": " + iterations + " CG iterations");
+				if (iterations == IMPLICIT_MAX_ITERATIONS) {
+					System.err.println("CG did not converge in step " + step);
+				}
+				double[] tmp = globalTensors;
+				globalTensors = smoothened;
+				smoothened = tmp;
+				if (iterations < 0) {
+					// the remaining steps would fail the same way
+					System.err.println("CG diverged or the system is not positive definite in step "
+										+ step + ", skipping the remaining steps");
+					break;
+				}
 			}
-			// for the next step, use the "new" smoothened values as "old"
-			globalTensors = smoothened;
 		}
 		// project back into 2x2, globalTensors contains smoothened values now
-		for(int i = 0; i < globalTensors.length; ++i) {
-			VertexCurvature curve = m_vertexMap[i];
-			if (curve == null) {
-				continue;
+		final double[] smoothened = globalTensors;
+		final double[] local = new double[TensorKernels.LOCAL_SIZE * n];
+		Parallel.forEachChunk(n, new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				TensorKernels.toLocal(frames, smoothened, local, begin, end);
+				for(int i = begin; i < end; ++i) {
+					final int f = TensorKernels.FRAME_SIZE * i;
+					// vertices without tangent plane have a zero frame
+					if (!m_store.isValid(i) || (frames[f] == 0 && frames[f + 1] == 0 && frames[f + 2] == 0)) {
+						///TODO: can we not somehow get the smoothened B into here?
+						continue;
+					}
+					final int l = TensorKernels.LOCAL_SIZE * i;
+					m_store.setTensor(i, local[l], local[l + 1], local[l + 2]);
+				}
 			}
-			PdMatrix tangentPlane = curve.tangentPlane();
-			if (tangentPlane == null) {
-				///TODO: can we not somehow get the smoothened B into here?
-				continue;
+		});
+		m_smoothing = smoothing;
+		System.out.println("done");
+	}
+	/**
+	 * Curvature of @p type for all vertices, zero for invalid vertices.
+	 *
+	 * The values are computed in parallel on first use and memoized until
+	 * the vertices are modified, see updateVertices(). Smoothing only changes
+	 * the tensors, not these values. The returned array is shared and must
+	 * not be modified.
+	 */
+	public synchronized double[] scalarField(final CurvatureType type)
+	{
+		double[] values = m_scalarFields[type.ordinal()];
+		if (values != null) {
+			return values;
+		}
+		final double[] field = new double[m_store.size()];
+		Parallel.forEachChunk(field.length, new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				for(int i = begin; i < end; ++i) {
+					if (m_store.isValid(i)) {
+						field[i] = scalar(type, i);
+					}
+				}
 			}
-			PdVector x = tangentPlane.getRow(1);
-			PdVector y = tangentPlane.getRow(2);
-			curve.B = toLocalTensor(globalTensors[i], x, y);
+		});
+		m_scalarFields[type.ordinal()] = field;
+		return field;
+	}
+	/**
+	 * @return statistics of scalarField(@p type), memoized like the field itself
+	 */
+	public synchronized FieldStatistics statistics(CurvatureType type)
+	{
+		FieldStatistics statistics = m_statistics[type.ordinal()];
+		if (statistics == null) {
+			statistics = new FieldStatistics(scalarField(type));
+			m_statistics[type.ordinal()] = statistics;
 		}
-		System.out.println("done");
+		return statistics;
+	}
+	private double scalar(CurvatureType type, int i)
+	{
+		switch (type) {
+		case Mean:
+			return m_store.meanCurvature(i);
+		case Gaussian:
+			return m_store.gaussianCurvature(i);
+		case Minimum:
+			return m_store.minimumCurvature(i);
+		case Maximum:
+			return m_store.maximumCurvature(i);
+		}
+		throw new IllegalArgumentException("unhandled curvature type: " + type);
+	}
+	private synchronized void invalidateScalarFields()
+	{
+		Arrays.fill(m_scalarFields, null);
+		Arrays.fill(m_statistics, null);
+	}
+	/**
+	 * Explicit smoothing steps of smoothTensorField() in single precision.
+	 *
+	 * @return smoothened values, either @p values or a new array
+	 */
+	private float[] smoothSinglePrecision(float[] values, int steps, double stepSize,
+											Laplacian laplacian, SmoothingScheme scheme)
+	{
+		if (scheme == SmoothingScheme.ForwardEuler) {
+			float[] smoothened = new float[values.length];
+			for(int step = 0; step < steps; ++step) {
+				laplacian.smooth(values, smoothened, GLOBAL_TENSOR_SIZE, stepSize);
+				float[] tmp = values;
+				values = smoothened;
+				smoothened = tmp;
+			}
+		} else if (scheme == SmoothingScheme.GaussSeidel) {
+			for(int step = 0; step < steps; ++step) {
+				laplacian.smooth(values, values, GLOBAL_TENSOR_SIZE, stepSize);
+			}
+		} else {
+			assert scheme == SmoothingScheme.ColoredGaussSeidel;
+			int[] colorOffsets = m_cornerTable.colorOffsets();
+			int[] coloredVertices = m_cornerTable.coloredVertices();
+			for(int step = 0; step < steps; ++step) {
+				laplacian.smoothColored(values, GLOBAL_TENSOR_SIZE, stepSize,
+										colorOffsets, coloredVertices);
+			}
+		}
+		return values;
+	}
+	/**
+	 * @return interior angles of all corners, computed on first use
+	 */
+	synchronized CornerAngles cornerAngles()
+	{
+		if (m_cornerAngles == null) {
+			m_cornerAngles = new CornerAngles(m_geometry, m_cornerTable);
+		}
+		return m_cornerAngles;
+	}
+	/**
+	 * @return weighted Laplacian of the geometry, computed on first use
+	 */
+	synchronized Laplacian laplacian(WeightingType weightingType)
+	{
+		Laplacian laplacian = m_laplacians[weightingType.ordinal()];
+		if (laplacian == null) {
+			laplacian = new Laplacian(m_geometry, m_cornerTable, cornerAngles(), weightingType);
+			m_laplacians[weightingType.ordinal()] = laplacian;
+		}
+		return laplacian;
 	}
 	/**
 	 * @param globalTensor 3x3 curvature in global frame
@@ -0,0 +1,341 @@
+/*
+	Copyright 2012 Milian Wolff <mail@milianw.de>
+
+	This program is free software; you can redistribute it and/or
+	modify it under the terms of the GNU General Public License as
+	published by the Free Software Foundation; either version 2 of
+	the License, or (at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import jv.geom.PgElementSet;
+import jv.vecmath.PdVector;
+import jv.vecmath.PiVector;
+
+/**
+ * Persistent binary cache for the corner table and curvature of a geometry.
+ *
+ * Files are keyed by a SHA-1 hash of the vertex positions and triangles,
+ * hence any change to the mesh results in a cache miss. The layout is
+ * (all values big endian):
+ *
+ * header:    int magic, int version, 20 byte hash,
+ *            int #vertices, int #corners, int #non-manifold edges
+ * corners:   int[#corners] vertex, int[#corners] opposite,
+ *            int[#vertices] representative corner
+ * curvature: byte[#vertices] flags, double[3 * #vertices] meanOp,
+ *            double[#vertices] gaussian, double[#vertices] area,
+ *            i.e. the arrays of the CurvatureStore, the flags are those
+ *            belonging to the fitted tensors
+ * tensor:    byte 1 if the tensor was computed, 0 otherwise, in which case
+ *            the file ends here, then:
+ *            double[3 * #vertices] fitted tensors (see CurvatureStore.tensor())
+ *            int length + UTF-8 bytes of the smoothing description
+ *            if the description is not empty, double[3 * #vertices] smoothened
+ *            tensors and byte[#vertices] flags belonging to them
+ */
+class CurvatureCache {
+	/**
+	 * @param directory where cache files are read from and written to
+	 */
+	public CurvatureCache(File directory)
+	{
+		m_directory = directory;
+	}
+	/**
+	 * Restore curvature of @p geometry from the cache.
+	 *
+	 * @return restored curvature or null if it is not cached or the cache is unreadable
+	 */
+	public Curvature load(PgElementSet geometry)
+	{
+		byte[] hash = hash(geometry);
+		File file = cacheFile(hash);
+		if (!file.exists()) {
+			return null;
+		}
+		System.out.println("loading cached curvature from " + file);
+		FileInputStream stream = null;
+		try {
+			stream = new FileInputStream(file);
+			FileChannel channel = stream.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("file too large: " + channel.size());
+			}
+			// copy into the heap instead of mapping the file: a mapping keeps
+			// the file locked on Windows until it is garbage collected, such
+			// that store() could neither replace nor delete it
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					throw new IOException("unexpected end of file");
+				}
+			}
+			buffer.flip();
+			Curvature curvature = read(buffer, geometry, hash);
+			if (curvature == null) {
+				System.err.println("ignoring outdated, foreign or truncated cache file " + file);
+			}
+			return curvature;
+		} catch (IOException e) {
+			System.err.println("could not read cache file " + file + ": " + e);
+			return null;
+		} catch (RuntimeException e) {
+			// e.g. BufferUnderflowException for corrupted files that pass the size checks
+			System.err.println("could not read corrupted cache file " + file + ": " + e);
+			return null;
+		} finally {
+			close(stream);
+		}
+	}
+	/**
+	 * Write the current state of @p curvature to the cache.
+	 *
+	 * Does nothing if @p curvature was loaded from the cache and
+	 * contains no newly computed results.
+	 */
+	public void store(Curvature curvature)
+	{
+		if (curvature.isRestored()) {
+			return;
+		}
+		byte[] hash = hash(curvature.geometry());
+		File file = cacheFile(hash);
+		System.out.println("caching curvature in " + file);
+		// write to a temporary file first, such that readers never see partial files
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+			write(out, curvature, hash);
+			out.close();
+			out = null;
+			if (!tmp.renameTo(file)) {
+				file.delete();
+				if (!tmp.renameTo(file)) {
+					throw new IOException("could not rename " + tmp);
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("could not write cache file " + file + ": " + e);
+			tmp.delete();
+		} finally {
+			close(out);
+		}
+	}
+	private File cacheFile(byte[] hash)
+	{
+		StringBuilder name = new StringBuilder("curvature-");
+		for(byte b : hash) {
+			name.append(String.format("%02x", b));
+		}
+		name.append(".cache");
+		return new File(m_directory, name.toString());
+	}
+	/**
+	 * @return content hash of vertex positions and triangles of @p geometry
+	 */
+	static byte[] hash(PgElementSet geometry)
+	{
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		buffer.putInt(geometry.getNumVertices());
+		buffer.putInt(geometry.getNumElements());
+		for(int i = 0; i < geometry.getNumVertices(); ++i) {
+			if (buffer.remaining() < 3 * 8) {
+				flush(digest, buffer);
+			}
+			PdVector v = geometry.getVertex(i);
+			buffer.putDouble(v.getEntry(0));
+			buffer.putDouble(v.getEntry(1));
+			buffer.putDouble(v.getEntry(2));
+		}
+		for(int i = 0; i < geometry.getNumElements(); ++i) {
+			if (buffer.remaining() < 3 * 4) {
+				flush(digest, buffer);
+			}
+			PiVector e = geometry.getElement(i);
+			buffer.putInt(e.getEntry(0));
+			buffer.putInt(e.getEntry(1));
+			buffer.putInt(e.getEntry(2));
+		}
+		flush(digest, buffer);
+		return digest.digest();
+	}
+	private static void flush(MessageDigest digest, ByteBuffer buffer)
+	{
+		digest.update(buffer.array(), 0, buffer.position());
+		buffer.clear();
+	}
+	private static void write(DataOutputStream out, Curvature curvature, byte[] hash) throws IOException
+	{
+		CornerTable table = curvature.cornerTable();
+		CurvatureStore store = curvature.store();
+		final int numVertices = store.size();
+		final int numCorners = table.size();
+		double[] fitted = curvature.hasTensor() ? curvature.fittedTensors() : null;
+		String smoothing = fitted != null ? curvature.smoothing() : "";
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.write(hash);
+		out.writeInt(numVertices);
+		out.writeInt(numCorners);
+		out.writeInt(table.numNonManifoldEdges());
+
+		for(int c = 0; c < numCorners; ++c) {
+			out.writeInt(table.vertex(c));
+		}
+		for(int c = 0; c < numCorners; ++c) {
+			out.writeInt(table.opposite(c));
+		}
+		for(int v = 0; v < numVertices; ++v) {
+			out.writeInt(table.vertexCorner(v));
+		}
+
+		// smoothing also flags vertices whose tensor could not be fitted
+		out.write(fitted != null ? curvature.fittedFlags() : store.flags());
+		writeDoubles(out, store.meanOps());
+		writeDoubles(out, store.gaussians());
+		writeDoubles(out, store.areas());
+
+		out.writeBoolean(fitted != null);
+		if (fitted == null) {
+			return;
+		}
+		writeDoubles(out, fitted);
+		byte[] description = smoothing.getBytes("UTF-8");
+		out.writeInt(description.length);
+		out.write(description);
+		if (description.length > 0) {
+			writeDoubles(out, store.tensors());
+			out.write(store.flags());
+		}
+	}
+	private static void writeDoubles(DataOutputStream out, double[] values) throws IOException
+	{
+		for(double value : values) {
+			out.writeDouble(value);
+		}
+	}
+	/**
+	 * @return restored curvature or null if @p buffer does not match @p geometry
+	 * or is too small for the sizes given in its header
+	 */
+	private static Curvature read(ByteBuffer buffer, PgElementSet geometry, byte[] hash)
+	{
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			return null;
+		}
+		byte[] fileHash = new byte[hash.length];
+		buffer.get(fileHash);
+		if (!MessageDigest.isEqual(hash, fileHash)) {
+			return null;
+		}
+		final int numVertices = buffer.getInt();
+		final int numCorners = buffer.getInt();
+		final int nonManifoldEdges = buffer.getInt();
+		if (numVertices != geometry.getNumVertices() || numCorners != geometry.getNumElements() * 3) {
+			return null;
+		}
+		// corners and curvature, i.e. 1 + 5 * 8 bytes per vertex, plus the tensor flag
+		if (buffer.remaining() < 4L * (2L * numCorners + numVertices) + 41L * numVertices + 1) {
+			return null;
+		}
+
+		int[] vertex = new int[numCorners];
+		int[] opposite = new int[numCorners];
+		int[] vertexCorner = new int[numVertices];
+		buffer.asIntBuffer().get(vertex);
+		buffer.position(buffer.position() + numCorners * 4);
+		buffer.asIntBuffer().get(opposite);
+		buffer.position(buffer.position() + numCorners * 4);
+		buffer.asIntBuffer().get(vertexCorner);
+		buffer.position(buffer.position() + numVertices * 4);
+		Curvature curvature = new Curvature(geometry,
+								new CornerTable(vertex, opposite, vertexCorner, nonManifoldEdges));
+
+		CurvatureStore store = curvature.store();
+		buffer.get(store.flags());
+		readDoubles(buffer, store.meanOps());
+		readDoubles(buffer, store.gaussians());
+		readDoubles(buffer, store.areas());
+
+		if (buffer.get() == 0) {
+			return curvature;
+		}
+		// fitted tensors and description length
+		if (buffer.remaining() < 24L * numVertices + 4) {
+			return null;
+		}
+		double[] fitted = readDoubles(buffer, new double[3 * numVertices]);
+		final int descriptionLength = buffer.getInt();
+		if (descriptionLength < 0 || buffer.remaining() < descriptionLength
+			|| (descriptionLength > 0 && buffer.remaining() - descriptionLength < 25L * numVertices)) {
+			return null;
+		}
+		byte[] description = new byte[descriptionLength];
+		buffer.get(description);
+		String smoothing;
+		try {
+			smoothing = new String(description, "UTF-8");
+		} catch (java.io.UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+		double[] smoothed = null;
+		byte[] smoothedFlags = null;
+		if (description.length > 0) {
+			smoothed = readDoubles(buffer, new double[3 * numVertices]);
+			smoothedFlags = new byte[numVertices];
+			buffer.get(smoothedFlags);
+		}
+		curvature.restoreTensors(fitted, smoothing, smoothed, smoothedFlags);
+		return curvature;
+	}
+	private static double[] readDoubles(ByteBuffer buffer, double[] values)
+	{
+		buffer.asDoubleBuffer().get(values);
+		buffer.position(buffer.position() + values.length * 8);
+		return values;
+	}
+	private static void close(java.io.Closeable stream)
+	{
+		if (stream == null) {
+			return;
+		}
+		try {
+			stream.close();
+		} catch (IOException e) {
+			// nothing we can do
+		}
+	}
+	private static final int MAGIC = 0x53435643; // "SCVC"
+	/**
+	 * bump whenever the layout or the computation of the cached values changes
+	 */
+	private static final int VERSION = 5;
+	private File m_directory;
+}
@@ -0,0 +1,228 @@
+/*
+	Copyright 2012 Milian Wolff <mail@milianw.de>
+
+	This program is free software; you can redistribute it and/or
+	modify it under the terms of the GNU General Public License as
+	published by the Free Software Foundation; either version 2 of
+	the License, or (at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Per-vertex curvature values, stored as flat primitive arrays.
+ *
+ * All accessors take the vertex index and never allocate. Vertices
+ * without curvature, e.g. isolated ones or those next to degenerated
+ * triangles, are not valid and should be skipped.
+ */
+class CurvatureStore {
+	public CurvatureStore(int numVertices)
+	{
+		m_flags = new byte[numVertices];
+		m_meanOp = new double[3 * numVertices];
+		m_gaussian = new double[numVertices];
+		m_area = new double[numVertices];
+		m_tensor = new double[3 * numVertices];
+	}
+	/**
+	 * @return number of vertices
+	 */
+	public int size()
+	{
+		return m_flags.length;
+	}
+	/**
+	 * @return true if curvature was computed for vertex @p i
+	 */
+	public boolean isValid(int i)
+	{
+		return (m_flags[i] & VALID) != 0;
+	}
+	/**
+	 * @return true if the curvature tensor was computed for vertex @p i
+	 */
+	public boolean hasTensor(int i)
+	{
+		return (m_flags[i] & TENSOR) != 0;
+	}
+	/**
+	 * mean curvature normal operator
+	 *
+	 * note: not normalized! i.e. misses 1/(2*area)
+	 * see eq. 8.
+	 *
+	 * @param axis 0, 1 or 2 for the x, y or z coordinate
+	 */
+	public double meanOp(int i, int axis)
+	{
+		return m_meanOp[3 * i + axis];
+	}
+	/**
+	 * gaussian curvature Operator
+	 * note: not normalized! i.e. is just the sum of angles, misses (2pi - ...)/area
+	 * note: in degree!
+	 * @see gaussianCurvature()
+	 */
+	public double gaussian(int i)
+	{
+		return m_gaussian[i];
+	}
+	/**
+	 * mixed area
+	 * see fig. 4
+	 */
+	public double area(int i)
+	{
+		return m_area[i];
+	}
+	/**
+	 * Symmetric curvature tensor in the local frame of the tangent plane:
+	 *
+	 *  a | b
+	 * ---|---
+	 *  b | c
+	 *
+	 * @param entry 0, 1 or 2 for a, b or c
+	 */
+	public double tensor(int i, int entry)
+	{
+		return m_tensor[3 * i + entry];
+	}
+	public double gaussianCurvature(int i)
+	{
+		return (2.0d * Math.PI - Math.toRadians(m_gaussian[i])) / m_area[i];
+	}
+	public double meanCurvature(int i)
+	{
+		// note: 1/2 from K as vector, another 1/2 for K_H
+		return 1.0d / (4.0 * m_area[i]) * meanOpLength(i);
+	}
+	public double minimumCurvature(int i)
+	{
+		return meanCurvature(i) - Math.sqrt(delta(i));
+	}
+	public double maximumCurvature(int i)
+	{
+		return meanCurvature(i) + Math.sqrt(delta(i));
+	}
+	public double delta(int i)
+	{
+		final double mean = meanCurvature(i);
+		return Math.max(0, mean * mean - gaussianCurvature(i));
+	}
+	/**
+	 * Normal of the tangent plane, i.e. the normalized mean curvature operator.
+	 *
+	 * According to the paper by Meyer e.a. this is the
+	 * normal of the tangent plane.
+	 *
+	 * @return coordinate @p axis of the normal or zero if the mean curvature is zero
+	 */
+	public double normal(int i, int axis)
+	{
+		final double length = meanOpLength(i);
+		if (length == 0) {
+			return 0;
+		}
+		return m_meanOp[3 * i + axis] / length;
+	}
+	private double meanOpLength(int i)
+	{
+		final double x = m_meanOp[3 * i];
+		final double y = m_meanOp[3 * i + 1];
+		final double z = m_meanOp[3 * i + 2];
+		return Math.sqrt(x * x + y * y + z * z);
+	}
+	/**
+	 * Add the contribution of a single corner to vertex @p i and mark it valid.
+	 *
+	 * @param weight factor for the edge vector @p edgeX, @p edgeY, @p edgeZ
+	 * that gets added to the mean curvature operator
+	 * @param angle interior angle of the corner in degrees
+	 * @param area share of the corner in the mixed area
+	 */
+	public void addCorner(int i, double weight, double edgeX, double edgeY, double edgeZ,
+							double angle, double area)
+	{
+		m_flags[i] |= VALID;
+		m_meanOp[3 * i] += weight * edgeX;
+		m_meanOp[3 * i + 1] += weight * edgeY;
+		m_meanOp[3 * i + 2] += weight * edgeZ;
+		m_gaussian[i] += angle;
+		m_area[i] += area;
+	}
+	/**
+	 * Mark vertex @p i as valid without adding anything.
+	 */
+	public void setValid(int i)
+	{
+		m_flags[i] |= VALID;
+	}
+	/**
+	 * Reset all values of vertex @p i and mark it invalid.
+	 */
+	public void invalidate(int i)
+	{
+		m_flags[i] = 0;
+		for(int k = 0; k < 3; ++k) {
+			m_meanOp[3 * i + k] = 0;
+			m_tensor[3 * i + k] = 0;
+		}
+		m_gaussian[i] = 0;
+		m_area[i] = 0;
+	}
+	public void setTensor(int i, double a, double b, double c)
+	{
+		m_flags[i] |= TENSOR;
+		m_tensor[3 * i] = a;
+		m_tensor[3 * i + 1] = b;
+		m_tensor[3 * i + 2] = c;
+	}
+	/**
+	 * Remove the curvature tensor of vertex @p i, e.g. if it cannot be fitted.
+	 */
+	public void clearTensor(int i)
+	{
+		m_flags[i] &= ~TENSOR;
+		m_tensor[3 * i] = 0;
+		m_tensor[3 * i + 1] = 0;
+		m_tensor[3 * i + 2] = 0;
+	}
+	/**
+	 * Raw arrays, for bulk access by the cache and for snapshots of the tensors.
+	 */
+	byte[] flags()
+	{
+		return m_flags;
+	}
+	double[] meanOps()
+	{
+		return m_meanOp;
+	}
+	double[] gaussians()
+	{
+		return m_gaussian;
+	}
+	double[] areas()
+	{
+		return m_area;
+	}
+	double[] tensors()
+	{
+		return m_tensor;
+	}
+	public static final byte VALID = 1;
+	public static final byte TENSOR = 2;
+	private byte[] m_flags;
+	private double[] m_meanOp;
+	private double[] m_gaussian;
+	private double[] m_area;
+	private double[] m_tensor;
+}
@@ -19,6 +19,7 @@ import jv.geom.PgElementSet;
 import jv.loader.PgFileDialog;
 import jv.loader.PjImportModel;
 import jv.object.PsMainFrame;
+import jv.vecmath.PdVector;
 
 /**
  * Solution to first exercise of second project
@@ -55,56 +56,197 @@ public class Ex2_1 {
 
 		System.out.println("loaded geometry: " + dlg.getFullFileName());
 		System.out.println("elements: " + geometry.getNumElements() + ", vertices: " + geometry.getNumVertices());
-		CornerTable table = new CornerTable(geometry);
-		System.out.println("constructed corner table, running tests");
-		for(Corner c : table.corners()) {
+		CornerTable reference = null;
+		for(CornerTable.ConstructionMode mode : CornerTable.ConstructionMode.values()) {
+			CornerTable table = new CornerTable(geometry, mode);
+			System.out.println("constructed corner table via " + mode + ", running tests");
+			checkInvariants(table);
+			if (reference == null) {
+				reference = table;
+				continue;
+			}
+			// all construction modes must yield the exact same table
+			assert table.size() == reference.size();
+			for(int c = 0; c < table.size(); ++c) {
+				assert table.vertex(c) == reference.vertex(c);
+				assert table.opposite(c) == reference.opposite(c);
+			}
+		}
+		System.out.println("comparing single and double precision smoothing");
+		checkPrecision(geometry);
+		System.out.println("comparing incremental and full curvature updates");
+		checkUpdate(geometry);
+		System.out.println("done, it worked - neat. exiting now");
+		System.exit(0);
+	}
+	/**
+	 * Smoothing in single precision must give the same tensors as in double
+	 * precision, up to rounding, see Curvature.Precision. Uniform weights
+	 * keep the step size stable on any mesh.
+	 */
+	private static void checkPrecision(PgElementSet geometry)
+	{
+		Curvature curvature = new Curvature(geometry);
+		Curvature.SmoothingScheme[] schemes = {
+			Curvature.SmoothingScheme.ForwardEuler,
+			Curvature.SmoothingScheme.GaussSeidel,
+			Curvature.SmoothingScheme.ColoredGaussSeidel
+		};
+		for(Curvature.SmoothingScheme scheme : schemes) {
+			curvature.setPrecision(Curvature.Precision.Double);
+			curvature.computeCurvatureTensor();
+			curvature.smoothTensorField(PRECISION_STEPS, PRECISION_STEP_SIZE,
+										Curvature.WeightingType.Uniform, scheme);
+			double[] expected = curvature.store().tensors().clone();
+			curvature.setPrecision(Curvature.Precision.Float);
+			curvature.computeCurvatureTensor();
+			curvature.smoothTensorField(PRECISION_STEPS, PRECISION_STEP_SIZE,
+										Curvature.WeightingType.Uniform, scheme);
+			double[] actual = curvature.store().tensors();
+			double maxEntry = 0;
+			double maxError = 0;
+			for(int k = 0; k < expected.length; ++k) {
+				maxEntry = Math.max(maxEntry, Math.abs(expected[k]));
+				maxError = Math.max(maxError, Math.abs(expected[k] - actual[k]));
+			}
+			System.out.println(scheme + ": max error " + maxError + ", max entry " + maxEntry);
+			assert maxError <= PRECISION_TOLERANCE * maxEntry : scheme + ": " + maxError;
+		}
+	}
+	/**
+	 * After moving some vertices, Curvature.updateVertices() must give exactly
+	 * the same curvature and fitted tensors as computing everything anew.
+	 * One of the vertices is moved onto a neighbor, such that the curvature
+	 * of the vertices in its degenerated triangles becomes invalid.
+	 * The original positions are restored afterwards.
+	 */
+	private static void checkUpdate(PgElementSet geometry)
+	{
+		Curvature curvature = new Curvature(geometry);
+		curvature.computeCurvatureTensor();
+		curvature.smoothTensorField(PRECISION_STEPS, PRECISION_STEP_SIZE,
+									Curvature.WeightingType.Uniform,
+									Curvature.SmoothingScheme.ForwardEuler);
+		OneRing ring = curvature.cornerTable().oneRing();
+		int numVertices = geometry.getNumVertices();
+		int[] modified = new int[Math.min(UPDATE_VERTICES, numVertices)];
+		PdVector[] original = new PdVector[modified.length];
+		for(int i = 0; i < modified.length; ++i) {
+			int v = (int) ((long) i * numVertices / modified.length);
+			modified[i] = v;
+			original[i] = PdVector.copyNew(geometry.getVertex(v));
+			PdVector position = PdVector.copyNew(original[i]);
+			if (i == 0 && ring.degree(v) > 0) {
+				position = PdVector.copyNew(geometry.getVertex(ring.vertex(ring.begin(v))));
+			} else {
+				for(int k = 0; k < 3; ++k) {
+					position.setEntry(k, position.getEntry(k) * (1 + UPDATE_OFFSET * (k + 1)));
+				}
+			}
+			geometry.setVertex(v, position);
+		}
+		curvature.updateVertices(modified);
+		CurvatureStore actual = curvature.store();
+		Curvature reference = new Curvature(geometry);
+		reference.computeCurvatureTensor();
+		CurvatureStore expected = reference.store();
+		int numInvalid = 0;
+		for(int v = 0; v < numVertices; ++v) {
+			assert actual.isValid(v) == expected.isValid(v) : v;
+			assert actual.hasTensor(v) == expected.hasTensor(v) : v;
+			if (!expected.isValid(v)) {
+				++numInvalid;
+			}
+			assert actual.gaussian(v) == expected.gaussian(v) : v;
+			assert actual.area(v) == expected.area(v) : v;
+			for(int k = 0; k < 3; ++k) {
+				assert actual.meanOp(v, k) == expected.meanOp(v, k) : v;
+				assert actual.tensor(v, k) == expected.tensor(v, k) : v;
+			}
+		}
+		System.out.println("updated " + modified.length + " vertices, " + numInvalid + " invalid vertices");
+		for(int i = 0; i < modified.length; ++i) {
+			geometry.setVertex(modified[i], original[i]);
+		}
+	}
+	private static void checkInvariants(CornerTable table)
+	{
+		for(int c = 0; c < table.size(); ++c) {
+			int next = table.next(c);
+			int prev = table.prev(c);
 			// properly initialized prev/next
-			assert c.next != null;
-			assert c.prev != null;
+			assert next != c;
+			assert prev != c;
+			assert table.prev(next) == c;
+			assert table.next(prev) == c;
 			// next and prev in same triangle
-			assert c.next.triangle == c.triangle;
-			assert c.prev.triangle == c.triangle;
-			// opposite can be null for triangles at the end of a non-closed surface
-			if (c.opposite != null) {
-				Corner o = c.opposite;
+			assert table.triangle(next) == table.triangle(c);
+			assert table.triangle(prev) == table.triangle(c);
+			// opposite can be NONE for triangles at the end of a non-closed surface
+			if (table.opposite(c) != CornerTable.NONE) {
+				int o = table.opposite(c);
 				// different triangle
-				assert c.triangle != o.triangle;
+				assert table.triangle(c) != table.triangle(o);
 				// same edge though
 				// and hence same next + prev vertices
-				assert c.next.vertex == o.prev.vertex;
-				assert c.prev.vertex == o.next.vertex;
+				assert table.vertex(next) == table.vertex(table.prev(o));
+				assert table.vertex(prev) == table.vertex(table.next(o));
 				// and opposite is myself again
-				assert o.opposite == c;
+				assert table.opposite(o) == c;
 			}
 			// for the fun of it the tests from the slide
-			if (c.prev.opposite != null) {
+			int po = table.opposite(prev);
+			if (po != CornerTable.NONE) {
 				// c.p.o.n and c.n share the same vertex but are different corners
-				assert c.prev.opposite.next.vertex == c.next.vertex;
-				assert c.prev.opposite != c.next;
+				assert table.vertex(table.next(po)) == table.vertex(next);
+				assert po != next;
 				// c.p.o.p and c share the same vertex but are different corners
-				assert c.prev.opposite.prev.vertex == c.vertex;
-				assert c.prev.opposite.prev != c;
+				assert table.vertex(table.prev(po)) == table.vertex(c);
+				assert table.prev(po) != c;
 			}
 			// same as above
-			if (c.next.opposite != null) {
-				assert c.next.opposite.prev.vertex == c.prev.vertex;
-				assert c.next.opposite.prev != c.prev;
-				assert c.next.opposite.next.vertex == c.vertex;
-				assert c.next.opposite.next != c;
+			int no = table.opposite(next);
+			if (no != CornerTable.NONE) {
+				assert table.vertex(table.prev(no)) == table.vertex(prev);
+				assert table.prev(no) != prev;
+				assert table.vertex(table.next(no)) == table.vertex(c);
+				assert table.next(no) != c;
 			}
 			// now the last one
-			if (c.prev.opposite != null) {
-				Corner cpop = c.prev.opposite.prev;
-				assert cpop.vertex == c.vertex;
-				if (cpop.prev.opposite != null) {
-					Corner cpoppop = cpop.prev.opposite.prev;
-					assert cpoppop.vertex == c.vertex;
+			if (po != CornerTable.NONE) {
+				int cpop = table.prev(po);
+				assert table.vertex(cpop) == table.vertex(c);
+				int cpopo = table.opposite(table.prev(cpop));
+				if (cpopo != CornerTable.NONE) {
+					int cpoppop = table.prev(cpopo);
+					assert table.vertex(cpoppop) == table.vertex(c);
 					assert cpoppop != c;
 					assert cpop != cpoppop;
 				}
 			}
 		}
-		System.out.println("done, it worked - neat. exiting now");
-		System.exit(0);
+		// cached one-ring neighborhoods
+		OneRing ring = table.oneRing();
+		assert ring.numVertices() == table.numVertices();
+		for(int v = 0; v < ring.numVertices(); ++v) {
+			// representative corner
+			assert table.vertexCorner(v) == CornerTable.NONE || table.vertex(table.vertexCorner(v)) == v;
+			assert table.vertexCorner(v) != CornerTable.NONE || ring.degree(v) == 0;
+			for(int k = ring.begin(v); k < ring.end(v); ++k) {
+				assert ring.vertex(k) != v;
+				assert table.vertex(ring.corner(k)) == ring.vertex(k);
+			}
+		}
 	}
+	private static final int PRECISION_STEPS = 10;
+	private static final double PRECISION_STEP_SIZE = 0.05;
+	/**
+	 * maximum difference of single and double precision, relative to the largest tensor entry
+	 */
+	private static final double PRECISION_TOLERANCE = 1E-5;
+	private static final int UPDATE_VERTICES = 16;
+	/**
+	 * relative displacement of the moved vertices per coordinate axis
+	 */
+	private static final double UPDATE_OFFSET = 0.01;
 }
@@ -25,6 +25,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.io.File;
 
 import javax.swing.JComboBox;
 
@@ -50,19 +51,14 @@ public class Ex2_3 extends ProjectBase implements PvGeometryListenerIf, ItemList
 		new Ex2_3(args);
 	}
 	private JComboBox m_curvatureCombo;
-	private CurvatureType m_curvatureType;
-	private enum CurvatureType {
-		Mean,
-		Gaussian,
-		Minimum,
-		Maximum
-	}
+	private Curvature.CurvatureType m_curvatureType;
 	private JComboBox m_color;
 	private ColorType m_colorType;
 	private enum ColorType {
 		NoColors,
 		Maximum,
-		Deviation
+		Deviation,
+		Percentile
 	}
 	private Checkbox m_curvatureTensor;
 	private boolean m_displayTensor;
@@ -104,11 +100,11 @@ public class Ex2_3 extends ProjectBase implements PvGeometryListenerIf, ItemList
 		m_panel.add(new Label("Show:"), c);
 		c.gridx = 1;
 		m_curvatureCombo = new JComboBox();
-		m_curvatureCombo.addItem(CurvatureType.Mean);
-		m_curvatureCombo.addItem(CurvatureType.Gaussian);
-		m_curvatureCombo.addItem(CurvatureType.Maximum);
-		m_curvatureCombo.addItem(CurvatureType.Minimum);
-		m_curvatureType = CurvatureType.Mean;
+		m_curvatureCombo.addItem(Curvature.CurvatureType.Mean);
+		m_curvatureCombo.addItem(Curvature.CurvatureType.Gaussian);
+		m_curvatureCombo.addItem(Curvature.CurvatureType.Maximum);
+		m_curvatureCombo.addItem(Curvature.CurvatureType.Minimum);
+		m_curvatureType = Curvature.CurvatureType.Mean;
 		m_curvatureCombo.setSelectedItem(m_curvatureType);
 		m_curvatureCombo.addItemListener(this);
 		m_panel.add(m_curvatureCombo, c);
@@ -125,7 +121,8 @@ public class Ex2_3 extends ProjectBase implements PvGeometryListenerIf, ItemList
 		m_color.addItem(ColorType.NoColors);
 		m_color.addItem(ColorType.Maximum);
 		m_color.addItem(ColorType.Deviation);
-		m_colorType = ColorType.Deviation;
+		m_color.addItem(ColorType.Percentile);
+		m_colorType = ColorType.Percentile;
 		m_color.setSelectedItem(m_colorType);
 		m_panel.add(m_color, c);
 		c.gridwidth = 2;
@@ -248,7 +245,7 @@ public class Ex2_3 extends ProjectBase implements PvGeometryListenerIf, ItemList
 	{
 		Object source = e.getSource();
 		if (source == m_curvatureCombo) {
-			m_curvatureType = (CurvatureType) m_curvatureCombo.getSelectedItem();
+			m_curvatureType = (Curvature.CurvatureType) m_curvatureCombo.getSelectedItem();
 		} else if (source == m_curvatureTensor) {
 			m_displayTensor = m_curvatureTensor.getState();
 			m_smoothTensor.setEnabled(m_displayTensor);
@@ -276,6 +273,7 @@ public class Ex2_3 extends ProjectBase implements PvGeometryListenerIf, ItemList
 			}
 			m_lastCurvature.smoothTensorField(m_smoothSteps.getValue(), m_smoothStepSize.getValue(),
 												m_weightingType, m_smoothingScheme);
+			m_curvatureCache.store(m_lastCurvature);
 			m_lastTensorField = m_lastCurvature.computeCurvatureTensorFields();
 			updateView();
 		} else if (source == m_resetTensor) {
@@ -365,15 +363,6 @@ public class Ex2_3 extends ProjectBase implements PvGeometryListenerIf, ItemList
 			break;
 		}
 	}
-	private double absMax(double[] l)
-	{
-		assert l.length > 0;
-		double max = l[0];
-		for(int i = 1; i < l.length; ++i) {
-			max = Math.max(max, Math.abs(l[i]));
-		}
-		return max;
-	}
 	/**
 	 * given curvature values @param curvature, set vertex colors
 	 * of @param geometry, by mapping the curvature values to the
@@ -387,34 +376,29 @@ public class Ex2_3 extends ProjectBase implements PvGeometryListenerIf, ItemList
 	 *
 	 * @param geometry
 	 * @param curvature
+	 * @param statistics of @param curvature
 	 * @param hasNegative must be true if the values passed can
 	 * be negative, e.g. for gaussian or minimum curvatures
 	 */
-	private void setColorsFromMaxAbs(PgElementSet geometry, double[] curvature, boolean hasNegative)
+	private void setColorsFromMaxAbs(PgElementSet geometry, double[] curvature,
+									FieldStatistics statistics, boolean hasNegative)
 	{
 		assert curvature.length == geometry.getNumVertices();
 		// find maximum
-		double max = absMax(curvature);
+		double max = statistics.absMax();
 		assert max > 0;
+		assert max < Double.POSITIVE_INFINITY;
 		// assign colors
-		for(int i = 0; i < curvature.length; ++i) {
-			double mean = curvature[i];
-			assert mean <= max;
-			assert mean < Double.POSITIVE_INFINITY;
-			float normalized = (float) (mean / max);
-			if (hasNegative) {
-				assert normalized >= -1;
-				assert normalized <= 1;
-				normalized = (normalized + 1.0f) / 2.0f;
-			} else {
-				assert mean >= 0;
-			}
-			assert normalized >= 0;
-			assert normalized <= 1;
-			geometry.setVertexColor(i,
-					Color.getHSBColor(normalized, 1.0f, 1.0f)
-					);
+		int[] colors;
+		if (hasNegative) {
+			// map [-max, max] to [0, 1]
+			colors = HUE_RAMP.indices(curvature, 0.5d / max, 0.5d);
+		} else {
+			assert statistics.min() >= 0;
+			// map [0, max] to [0, 1]
+			colors = HUE_RAMP.indices(curvature, 1.0d / max, 0);
 		}
+		HUE_RAMP.apply(geometry, colors);
 		System.out.println("max curvature: " + max);
 	}
 	/**
@@ -427,89 +411,107 @@ public class Ex2_3 extends ProjectBase implements PvGeometryListenerIf, ItemList
 	 *
 	 * @param geometry
 	 * @param curvature
+	 * @param statistics of @param curvature
 	 * @param hasNegative
 	 */
-	private void setColorsFromDeviation(PgElementSet geometry, double[] curvature, boolean hasNegative)
+	private void setColorsFromDeviation(PgElementSet geometry, double[] curvature,
+										FieldStatistics statistics, boolean hasNegative)
 	{
 		assert curvature.length == geometry.getNumVertices();
 		assert curvature.length > 1;
-		double mean = 0;
-		for(double c : curvature) {
-			mean += c;
-		}
-		mean /= curvature.length;
-		// now calculate variance
-		double variance = 0;
-		for(double c : curvature) {
-			variance += Math.pow(c - mean, 2);
-		}
-		variance /= curvature.length - 1;
-		double standardDeviation = Math.sqrt(variance);
+		double mean = statistics.mean();
+		double standardDeviation = statistics.standardDeviation();
 		// now set colors based on deviation:
 		// zero deviation is hue of 0.5
 		// deviation is normalized to +- 0.5 in the tripled standard deviation interval
 		// anything higher just gets the maximum hue of 1 or 0 (both are red)
-		for(int i = 0; i < curvature.length; ++i) {
-			double c = curvature[i];
-			double deviation = c - mean;
-			float hue = ((float) deviation / (3.0f * (float) standardDeviation) + 1.0f) / 2.0f;
-			if (hue > 1) {
-				hue = 1;
-			} else if (hue < 0) {
-				hue = 0;
-			}
-			geometry.setVertexColor(i, Color.getHSBColor(hue, 1.0f, 1.0f));
+		double scale = 1.0d / (6.0d * standardDeviation);
+		HUE_RAMP.apply(geometry, HUE_RAMP.indices(curvature, scale, 0.5d - mean * scale));
+	}
+	/**
+	 * Like setColorsFromMaxAbs, but normalize by robust bounds: the maximum
+	 * is replaced by the absolute value of the PERCENTILE-th or
+	 * (1 - PERCENTILE)-th percentile. The few spikes of heavy tailed
+	 * curvatures, e.g. on the hand, then do not squeeze all other values
+	 * into a tiny hue range. Values outside the bounds get the hue 0 = 1 = red.
+	 *
+	 * @param geometry
+	 * @param curvature
+	 * @param statistics of @param curvature
+	 * @param hasNegative
+	 */
+	private void setColorsFromPercentiles(PgElementSet geometry, double[] curvature,
+										FieldStatistics statistics, boolean hasNegative)
+	{
+		assert curvature.length == geometry.getNumVertices();
+		double lower = statistics.percentile(PERCENTILE);
+		double upper = statistics.percentile(1 - PERCENTILE);
+		double bound = hasNegative ? Math.max(Math.abs(lower), Math.abs(upper)) : upper;
+		if (bound <= 0) {
+			// e.g. mostly flat, fall back to the maximum
+			bound = statistics.absMax();
+		}
+		assert bound > 0;
+		if (hasNegative) {
+			// map [-bound, bound] to [0, 1]
+			HUE_RAMP.apply(geometry, HUE_RAMP.indices(curvature, 0.5d / bound, 0.5d));
+		} else {
+			// map [0, bound] to [0, 1]
+			HUE_RAMP.apply(geometry, HUE_RAMP.indices(curvature, 1.0d / bound, 0));
 		}
+		System.out.println("percentile bounds: " + lower + ", " + upper);
 	}
+	/**
+	 * fraction of values on each side that is ignored by setColorsFromPercentiles
+	 */
+	private static final double PERCENTILE = 0.01;
+	/**
+	 * hues for the curvature colors, fine enough to be indistinguishable
+	 * from computing them per vertex
+	 */
+	private static final ColorRamp HUE_RAMP = ColorRamp.hue(2048);
 	// cache
+	private CurvatureCache m_curvatureCache = new CurvatureCache(new File("./data"));
 	private Curvature m_lastCurvature;
 	private PgVectorField[] m_lastTensorField;
-	private void setCurvatureColors(PgElementSet geometry, CurvatureType type, ColorType colorType,
-									boolean displayTensor, TensorType tensorType)
+	private void setCurvatureColors(PgElementSet geometry, Curvature.CurvatureType type,
+									ColorType colorType, boolean displayTensor, TensorType tensorType)
 	{
-		assert type == CurvatureType.Mean ||
-				type == CurvatureType.Gaussian ||
-				type == CurvatureType.Minimum ||
-				type == CurvatureType.Maximum;
 
 		boolean wasCached = true;
 		if (m_lastCurvature == null || m_lastCurvature.geometry() != geometry) {
-			m_lastCurvature = new Curvature(geometry);
+			m_lastCurvature = m_curvatureCache.load(geometry);
+			if (m_lastCurvature == null) {
+				m_lastCurvature = new Curvature(geometry);
+				m_curvatureCache.store(m_lastCurvature);
+			}
 			// gets updated on-demand, see below
 			m_lastTensorField = null;
 		}
 		System.out.println("setting colors: " + colorType + ", " + type);
-		Curvature.VertexCurvature[] curvature = m_lastCurvature.curvatures();
-		double values[] = new double[curvature.length];
+		CurvatureStore curvature = m_lastCurvature.store();
+		double values[] = m_lastCurvature.scalarField(type);
 		double totalGaussian = 0;
-		for (int i = 0; i < curvature.length; ++i) {
-			Curvature.VertexCurvature c = curvature[i];
-			if (c == null) {
-				values[i] = 0;
+		for (int i = 0; i < curvature.size(); ++i) {
+			if (!curvature.isValid(i)) {
 				continue;
 			}
-			assert c.area > 0;
-			if (type == CurvatureType.Mean) {
-				values[i] = c.meanCurvature();
-				assert values[i] >= 0;
-			} else if (type == CurvatureType.Minimum) {
-				values[i] = c.minimumCurvature();
-			} else if (type == CurvatureType.Maximum) {
-				values[i] = c.maximumCurvature();
-				assert values[i] >= 0;
-			} else {
-				assert type == CurvatureType.Gaussian;
-				values[i] = c.gaussianCurvature();
-			}
-			totalGaussian += Math.toRadians(c.gaussian);
+			assert curvature.area(i) > 0;
+			assert values[i] >= 0 || (type != Curvature.CurvatureType.Mean
+										&& type != Curvature.CurvatureType.Maximum);
+			totalGaussian += Math.toRadians(curvature.gaussian(i));
 		}
-		boolean hasNegative = type == CurvatureType.Gaussian || type == CurvatureType.Minimum;
+		boolean hasNegative = type == Curvature.CurvatureType.Gaussian
+								|| type == Curvature.CurvatureType.Minimum;
 		switch(colorType) {
 		case Deviation:
-			setColorsFromDeviation(geometry, values, hasNegative);
+			setColorsFromDeviation(geometry, values, m_lastCurvature.statistics(type), hasNegative);
 			break;
 		case Maximum:
-			setColorsFromMaxAbs(geometry, values, hasNegative);
+			setColorsFromMaxAbs(geometry, values, m_lastCurvature.statistics(type), hasNegative);
+			break;
+		case Percentile:
+			setColorsFromPercentiles(geometry, values, m_lastCurvature.statistics(type), hasNegative);
 			break;
 		case NoColors:
 			break;
@@ -527,8 +529,12 @@ public class Ex2_3 extends ProjectBase implements PvGeometryListenerIf, ItemList
 			if (wasCached && m_lastTensorField != null) {
 				tensorField = m_lastTensorField;
 			} else {
+				boolean hadTensor = m_lastCurvature.hasTensor();
 				tensorField = m_lastCurvature.computeCurvatureTensorFields();
 				m_lastTensorField = tensorField;
+				if (!hadTensor) {
+					m_curvatureCache.store(m_lastCurvature);
+				}
 			}
 			assert tensorField != null;
 			assert tensorField.length == 4;
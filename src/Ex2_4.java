@@ -26,6 +26,7 @@ import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 import java.awt.image.BufferedImage;
+import java.io.File;
 
 import javax.swing.JComboBox;
 
@@ -78,6 +79,7 @@ public class Ex2_4 extends ProjectBase implements PvGeometryListenerIf, ItemList
 	private Curvature.WeightingType m_weightingType;
 	private JComboBox m_smoothing;
 	private Curvature.SmoothingScheme m_smoothingScheme;
+	private CurvatureCache m_curvatureCache = new CurvatureCache(new File("./data"));
 	private Curvature m_lastCurvature;
 	private boolean m_rendering;
 	private DisplayImage m_img;
@@ -190,6 +192,9 @@ public class Ex2_4 extends ProjectBase implements PvGeometryListenerIf, ItemList
 		m_smoothing.addItemListener(this);
 		m_smoothing.addItem(Curvature.SmoothingScheme.ForwardEuler);
 		m_smoothing.addItem(Curvature.SmoothingScheme.GaussSeidel);
+		m_smoothing.addItem(Curvature.SmoothingScheme.BackwardEuler);
+		m_smoothing.addItem(Curvature.SmoothingScheme.ColoredGaussSeidel);
+		m_smoothing.addItem(Curvature.SmoothingScheme.Multigrid);
 		m_smoothingScheme = Curvature.SmoothingScheme.GaussSeidel;
 		m_smoothing.setSelectedItem(m_smoothingScheme);
 		m_panel.add(m_smoothing, c);
@@ -261,6 +266,7 @@ public class Ex2_4 extends ProjectBase implements PvGeometryListenerIf, ItemList
 			}
 			m_lastCurvature.smoothTensorField(m_smoothSteps.getValue(), m_smoothStepSize.getValue(),
 												m_weightingType, m_smoothingScheme);
+			m_curvatureCache.store(m_lastCurvature);
 			m_lastMajor = getTrace(m_lastCurvature, TensorType.Major);
 			m_lastMinor = getTrace(m_lastCurvature, TensorType.Minor);
 			updateView();
@@ -377,7 +383,7 @@ public class Ex2_4 extends ProjectBase implements PvGeometryListenerIf, ItemList
 		PgPolygonSet ret = new PgPolygonSet();
 		PgElementSet geometry = curvature.geometry();
 		ret.setName("trace of " + geometry.getName() + ", dir: " + direction);
-		Curvature.VertexCurvature[] curvatures = curvature.curvatures();
+		CurvatureStore store = curvature.store();
 		geometry.assureElementNormals();
 		for(int i = 0; i < geometry.getNumElements(); ++i) {
 			PiVector vertices = geometry.getElement(i);
@@ -385,11 +391,10 @@ public class Ex2_4 extends ProjectBase implements PvGeometryListenerIf, ItemList
 			// average global curvature tensors of vertices
 			PdMatrix avg = new PdMatrix(3, 3);
 			for(int j : vertices.getEntries()) {
-				Curvature.VertexCurvature curve = curvatures[j];
-				if (curve == null || curve.B == null) {
+				if (!store.hasTensor(j)) {
 					continue;
 				}
-				avg.add(curve.globalCurvature());
+				avg.add(curvature.globalCurvature(j));
 			}
 			avg.multScalar(1.0d/vertices.getSize());
 			// create 2x2 curvature for average tensor at center
@@ -480,10 +485,16 @@ public class Ex2_4 extends ProjectBase implements PvGeometryListenerIf, ItemList
 
 		System.out.println("updating view");
 		if (m_lastCurvature == null || m_lastCurvature.geometry() != geometry) {
-			m_lastCurvature = new Curvature(geometry);
-			m_lastCurvature.computeCurvatureTensor();
+			m_lastCurvature = m_curvatureCache.load(geometry);
+			if (m_lastCurvature == null) {
+				m_lastCurvature = new Curvature(geometry);
+			}
+			if (!m_lastCurvature.hasTensor()) {
+				m_lastCurvature.computeCurvatureTensor();
+			}
 			m_lastCurvature.smoothTensorField(m_smoothSteps.getValue(), m_smoothStepSize.getValue(),
 												m_weightingType, m_smoothingScheme);
+			m_curvatureCache.store(m_lastCurvature);
 			m_lastMajor = getTrace(m_lastCurvature, TensorType.Major);
 			m_lastMinor = getTrace(m_lastCurvature, TensorType.Minor);
 		}
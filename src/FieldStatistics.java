@@ -0,0 +1,144 @@
+/*
+	Copyright 2012 Milian Wolff <mail@milianw.de>
+
+	This program is free software; you can redistribute it and/or
+	modify it under the terms of the GNU General Public License as
+	published by the Free Software Foundation; either version 2 of
+	the License, or (at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Summary statistics of a scalar field, e.g. of Curvature.scalarField().
+ *
+ * Everything is computed in a single parallel pass over the values:
+ * mean and variance with Welford's online algorithm on blocks of fixed
+ * size, whose partial results are merged in block order, see Chan et al.
+ * "Updating Formulae and a Pairwise Algorithm for Computing Sample
+ * Variances", and percentiles with a QuantileSketch per chunk.
+ * Hence the results do not depend on the number of threads.
+ */
+class FieldStatistics {
+	public FieldStatistics(final double[] values)
+	{
+		assert values.length > 0;
+		m_size = values.length;
+		final int numBlocks = (values.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		final long[] counts = new long[numBlocks];
+		final double[] means = new double[numBlocks];
+		final double[] m2s = new double[numBlocks];
+		final int numChunks = Parallel.numChunks(numBlocks, 1);
+		final QuantileSketch[] sketches = new QuantileSketch[numChunks];
+		Parallel.forEachChunk(numBlocks, numChunks, new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int beginBlock, int endBlock)
+			{
+				QuantileSketch sketch = new QuantileSketch(PERCENTILE_ACCURACY);
+				for(int block = beginBlock; block < endBlock; ++block) {
+					final int end = Math.min(values.length, (block + 1) * BLOCK_SIZE);
+					long count = 0;
+					double mean = 0;
+					double m2 = 0;
+					for(int i = block * BLOCK_SIZE; i < end; ++i) {
+						final double value = values[i];
+						++count;
+						final double delta = value - mean;
+						mean += delta / count;
+						m2 += delta * (value - mean);
+						sketch.add(value);
+					}
+					counts[block] = count;
+					means[block] = mean;
+					m2s[block] = m2;
+				}
+				sketches[chunk] = sketch;
+			}
+		});
+		long count = 0;
+		double mean = 0;
+		double m2 = 0;
+		for(int block = 0; block < numBlocks; ++block) {
+			final long total = count + counts[block];
+			final double delta = means[block] - mean;
+			mean += delta * counts[block] / total;
+			m2 += m2s[block] + delta * delta * count * counts[block] / total;
+			count = total;
+		}
+		for(int chunk = 1; chunk < numChunks; ++chunk) {
+			sketches[0].merge(sketches[chunk]);
+		}
+		m_mean = mean;
+		m_m2 = m2;
+		m_sketch = sketches[0];
+	}
+	/**
+	 * @return number of values
+	 */
+	public int size()
+	{
+		return m_size;
+	}
+	public double mean()
+	{
+		return m_mean;
+	}
+	/**
+	 * @return sample variance, i.e. normalized by size() - 1
+	 */
+	public double variance()
+	{
+		return m_size > 1 ? m_m2 / (m_size - 1) : 0;
+	}
+	public double standardDeviation()
+	{
+		return Math.sqrt(variance());
+	}
+	public double min()
+	{
+		return m_sketch.min();
+	}
+	public double max()
+	{
+		return m_sketch.max();
+	}
+	/**
+	 * @return largest absolute value
+	 */
+	public double absMax()
+	{
+		return Math.max(Math.abs(min()), Math.abs(max()));
+	}
+	/**
+	 * Approximate the @p p-th percentile, i.e. the value at index
+	 * p * (size() - 1) of the sorted values, with a relative error
+	 * of at most PERCENTILE_ACCURACY, see QuantileSketch.
+	 *
+	 * @param p fraction between 0 and 1
+	 */
+	public double percentile(double p)
+	{
+		return m_sketch.quantile(p);
+	}
+	/**
+	 * values are reduced in blocks of this many entries
+	 */
+	private static final int BLOCK_SIZE = 4096;
+	/**
+	 * relative accuracy of percentile()
+	 */
+	public static final double PERCENTILE_ACCURACY = 0.01;
+	private final int m_size;
+	private final double m_mean;
+	/**
+	 * sum of squared differences from the mean
+	 */
+	private final double m_m2;
+	private final QuantileSketch m_sketch;
+}
@@ -0,0 +1,564 @@
+/*
+	Copyright 2012 Milian Wolff <mail@milianw.de>
+
+	This program is free software; you can redistribute it and/or
+	modify it under the terms of the GNU General Public License as
+	published by the Free Software Foundation; either version 2 of
+	the License, or (at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+import java.util.Arrays;
+
+import jv.geom.PgElementSet;
+import jv.vecmath.PdVector;
+
+/**
+ * Weighted umbrella operator of a triangle mesh, stored as sparse matrix
+ * in compressed sparse row form:
+ *
+ *   (L x)_i = sum_j w_ij (x_j - x_i)
+ *
+ * The rows share their structure with the OneRing of the corner table,
+ * i.e. the weight of neighbor k of vertex i is weight(k). The weights are
+ * computed once, smoothing steps then only multiply with the matrix.
+ *
+ * Vector arguments contain a fixed number of components per vertex,
+ * stored consecutively, e.g. the six unique entries of symmetric tensors.
+ */
+class Laplacian {
+	/**
+	 * Compute weights of type @p weightingType for all edges of @p geometry.
+	 */
+	public Laplacian(final PgElementSet geometry, final CornerTable cornerTable,
+						final CornerAngles angles, final Curvature.WeightingType weightingType)
+	{
+		m_ring = cornerTable.oneRing();
+		m_weights = new double[m_ring.size()];
+		Parallel.forEachChunk(m_ring.numVertices(), new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				for(int i = begin; i < end; ++i) {
+					for(int k = m_ring.begin(i); k < m_ring.end(i); ++k) {
+						m_weights[k] = computeWeight(geometry, cornerTable, angles, weightingType,
+														i, k);
+					}
+				}
+			}
+		});
+	}
+	private double computeWeight(PgElementSet geometry, CornerTable cornerTable, CornerAngles angles,
+									Curvature.WeightingType weightingType, int i, int k)
+	{
+		final int j = m_ring.vertex(k);
+		final int neighbor = m_ring.corner(k);
+		final int prev = cornerTable.prev(neighbor);
+		final int next = cornerTable.next(neighbor);
+		final int prevOpposite = cornerTable.opposite(prev);
+		assert i != j;
+		switch (weightingType) {
+		case Uniform:
+			return 1.0d;
+		case Cord:
+			return 1.0d / PdVector.subNew(geometry.getVertex(i), geometry.getVertex(j)).length();
+		case Cotangent:
+			assert cornerTable.vertex(prev) != i;
+			assert prevOpposite != CornerTable.NONE;
+			// like computeCurvature(), skip degenerated triangles with zero angles,
+			// i.e. their cotangent of zero does not contribute to the weight
+			double theta_1 = angles.cotan(prev);
+			double theta_2 = angles.cotan(prevOpposite);
+			return (theta_1 + theta_2) * 0.5d;
+		case MeanValue:
+			assert cornerTable.vertex(prev) != i;
+			assert cornerTable.vertex(next) == i;
+			double phi_1 = angles.tan(next);
+			assert prevOpposite != CornerTable.NONE;
+			final int prevOppositeNext = cornerTable.next(prevOpposite);
+			assert cornerTable.vertex(prevOppositeNext) == i;
+			double phi_2 = angles.tan(prevOppositeNext);
+			return (phi_1 + phi_2) * 0.5d;
+		}
+		throw new IllegalArgumentException("unhandled weighting type: " + weightingType);
+	}
+	/**
+	 * @return number of rows, i.e. vertices
+	 */
+	public int numVertices()
+	{
+		return m_ring.numVertices();
+	}
+	/**
+	 * @return index of the first off-diagonal entry of row @p i
+	 */
+	public int begin(int i)
+	{
+		return m_ring.begin(i);
+	}
+	/**
+	 * @return index behind the last off-diagonal entry of row @p i
+	 */
+	public int end(int i)
+	{
+		return m_ring.end(i);
+	}
+	/**
+	 * @return column, i.e. neighbor vertex, of entry @p k
+	 */
+	public int column(int k)
+	{
+		return m_ring.vertex(k);
+	}
+	/**
+	 * @return weight w_ij of entry @p k
+	 */
+	public double weight(int k)
+	{
+		return m_weights[k];
+	}
+	/**
+	 * Explicit smoothing step with @p components values per vertex:
+	 *
+	 *   out_i = in_i + stepSize * (L in)_i
+	 *
+	 * If @p out and @p in are the same array, the vertices are updated
+	 * in place in ascending order, i.e. a Gauss-Seidel sweep where
+	 * already smoothened neighbors contribute their new values.
+	 * Otherwise all vertices are updated in parallel, which gives the
+	 * same result independent of the number of threads.
+	 */
+	public void smooth(final double[] in, final double[] out, final int components,
+						final double stepSize)
+	{
+		assert in.length == numVertices() * components;
+		assert out.length == in.length;
+		if (in == out) {
+			smoothRange(in, out, components, stepSize, 0, numVertices());
+			return;
+		}
+		Parallel.forEachChunk(numVertices(), new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				smoothRange(in, out, components, stepSize, begin, end);
+			}
+		});
+	}
+	/**
+	 * Gauss-Seidel sweep with @p components values per vertex, updating
+	 * the vertices in place one color class after the other.
+	 *
+	 * No two vertices of a color class are neighbors, hence each class
+	 * is updated in parallel and the result does not depend on the number
+	 * of threads. See CornerTable.colorOffsets() for @p colorOffsets and
+	 * @p coloredVertices.
+	 */
+	public void smoothColored(final double[] values, final int components, final double stepSize,
+								int[] colorOffsets, final int[] coloredVertices)
+	{
+		assert values.length == numVertices() * components;
+		for(int color = 0; color + 1 < colorOffsets.length; ++color) {
+			final int offset = colorOffsets[color];
+			Parallel.forEachChunk(colorOffsets[color + 1] - offset, new Parallel.Loop() {
+				@Override
+				public void run(int chunk, int begin, int end)
+				{
+					double[] sum = new double[components];
+					for(int l = offset + begin; l < offset + end; ++l) {
+						smoothVertex(coloredVertices[l], values, values, components, stepSize, sum);
+					}
+				}
+			});
+		}
+	}
+	private void smoothRange(double[] in, double[] out, int components, double stepSize,
+								int begin, int end)
+	{
+		double[] sum = new double[components];
+		for(int i = begin; i < end; ++i) {
+			smoothVertex(i, in, out, components, stepSize, sum);
+		}
+	}
+	private void smoothVertex(int i, double[] in, double[] out, int components, double stepSize,
+								double[] sum)
+	{
+		final int row = i * components;
+		for(int c = 0; c < components; ++c) {
+			sum[c] = in[row + c];
+		}
+		for(int k = m_ring.begin(i); k < m_ring.end(i); ++k) {
+			final double weight = m_weights[k] * stepSize;
+			final int column = m_ring.vertex(k) * components;
+			for(int c = 0; c < components; ++c) {
+				sum[c] += (in[column + c] - in[row + c]) * weight;
+			}
+		}
+		// note: in place, the old value of i must stay intact until here
+		for(int c = 0; c < components; ++c) {
+			out[row + c] = sum[c];
+		}
+	}
+	/**
+	 * Single precision variant of smooth(), see Curvature.Precision.
+	 *
+	 * Values and weights are read as floats, which halves the memory traffic,
+	 * while the sums of each vertex are still accumulated in double precision.
+	 */
+	public void smooth(final float[] in, final float[] out, final int components,
+						final double stepSize)
+	{
+		assert in.length == numVertices() * components;
+		assert out.length == in.length;
+		final float[] weights = floatWeights();
+		if (in == out) {
+			smoothRange(weights, in, out, components, stepSize, 0, numVertices());
+			return;
+		}
+		Parallel.forEachChunk(numVertices(), new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				smoothRange(weights, in, out, components, stepSize, begin, end);
+			}
+		});
+	}
+	/**
+	 * Single precision variant of smoothColored(), see smooth(float[], float[], int, double).
+	 */
+	public void smoothColored(final float[] values, final int components, final double stepSize,
+								int[] colorOffsets, final int[] coloredVertices)
+	{
+		assert values.length == numVertices() * components;
+		final float[] weights = floatWeights();
+		for(int color = 0; color + 1 < colorOffsets.length; ++color) {
+			final int offset = colorOffsets[color];
+			Parallel.forEachChunk(colorOffsets[color + 1] - offset, new Parallel.Loop() {
+				@Override
+				public void run(int chunk, int begin, int end)
+				{
+					double[] sum = new double[components];
+					for(int l = offset + begin; l < offset + end; ++l) {
+						smoothVertex(weights, coloredVertices[l], values, values, components,
+										stepSize, sum);
+					}
+				}
+			});
+		}
+	}
+	private void smoothRange(float[] weights, float[] in, float[] out, int components,
+								double stepSize, int begin, int end)
+	{
+		double[] sum = new double[components];
+		for(int i = begin; i < end; ++i) {
+			smoothVertex(weights, i, in, out, components, stepSize, sum);
+		}
+	}
+	private void smoothVertex(float[] weights, int i, float[] in, float[] out, int components,
+								double stepSize, double[] sum)
+	{
+		final int row = i * components;
+		for(int c = 0; c < components; ++c) {
+			sum[c] = in[row + c];
+		}
+		for(int k = m_ring.begin(i); k < m_ring.end(i); ++k) {
+			final double weight = weights[k] * stepSize;
+			final int column = m_ring.vertex(k) * components;
+			for(int c = 0; c < components; ++c) {
+				sum[c] += (in[column + c] - in[row + c]) * weight;
+			}
+		}
+		for(int c = 0; c < components; ++c) {
+			out[row + c] = (float) sum[c];
+		}
+	}
+	/**
+	 * Implicit smoothing step with @p components values per vertex,
+	 * i.e. backward Euler: solve
+	 *
+	 *   (I - stepSize * L) out = in
+	 *
+	 * for each component with a Jacobi preconditioned conjugate gradient
+	 * solver, starting from @p in. The components are solved simultaneously
+	 * but converge independently.
+	 *
+	 * CG requires a symmetric matrix, hence w_ij and w_ji are averaged,
+	 * which only changes non-symmetric weights such as mean value weights,
+	 * see symmetricWeights().
+	 *
+	 * Negative weights, e.g. mean value weights of obtuse triangles, can
+	 * make the matrix indefinite, in which case CG does not converge.
+	 *
+	 * @param tolerance relative residual at which a component has converged
+	 * @return number of iterations, or -1 if the residual became non-finite,
+	 * e.g. for non-finite values in @p in, or if the matrix turned out not to
+	 * be positive definite, in which case @p out is a copy of @p in
+	 */
+	public int solveImplicit(double[] in, double[] out, int components, double stepSize,
+								double tolerance, int maxIterations)
+	{
+		assert in.length == numVertices() * components;
+		assert out.length == in.length;
+		assert in != out;
+		final int n = numVertices();
+		final double[] weights = symmetricWeights();
+		// inverse of the diagonal of I - hL, i.e. the Jacobi preconditioner
+		final double[] inverseDiagonal = new double[n];
+		for(int i = 0; i < n; ++i) {
+			double diagonal = 1;
+			for(int k = m_ring.begin(i); k < m_ring.end(i); ++k) {
+				diagonal += stepSize * weights[k];
+			}
+			inverseDiagonal[i] = diagonal;
+		}
+		for(int m = 0; m < m_mirroredRows.length; ++m) {
+			inverseDiagonal[m_mirroredRows[m]] += stepSize * m_mirroredWeights[m];
+		}
+		for(int i = 0; i < n; ++i) {
+			// negative cotangent weights can spoil the diagonal, don't precondition then
+			inverseDiagonal[i] = inverseDiagonal[i] > 0 ? 1.0d / inverseDiagonal[i] : 1;
+		}
+		double[] r = new double[in.length];
+		double[] z = new double[in.length];
+		double[] p = new double[in.length];
+		double[] q = new double[in.length];
+		double[] rz = new double[components];
+		double[] pq = new double[components];
+		double[] rr = new double[components];
+		double[] bb = new double[components];
+		double[] alpha = new double[components];
+		boolean[] converged = new boolean[components];
+
+		System.arraycopy(in, 0, out, 0, in.length);
+		dot(in, in, components, bb);
+		// r = in - A out
+		applyImplicit(weights, stepSize, out, q, components);
+		for(int k = 0; k < in.length; ++k) {
+			r[k] = in[k] - q[k];
+			z[k] = r[k] * inverseDiagonal[k / components];
+		}
+		System.arraycopy(z, 0, p, 0, z.length);
+		dot(r, z, components, rz);
+		int iteration = 0;
+		while (iteration < maxIterations) {
+			dot(r, r, components, rr);
+			boolean done = true;
+			for(int c = 0; c < components; ++c) {
+				if (!Utils.isFinite(rr[c])) {
+					System.arraycopy(in, 0, out, 0, in.length);
+					return -1;
+				}
+				converged[c] = converged[c] || rr[c] <= tolerance * tolerance * bb[c];
+				done = done && converged[c];
+			}
+			if (done) {
+				break;
+			}
+			++iteration;
+			applyImplicit(weights, stepSize, p, q, components);
+			dot(p, q, components, pq);
+			for(int c = 0; c < components; ++c) {
+				if (!converged[c] && pq[c] <= 0) {
+					// p^T A p <= 0 for a non-zero p, i.e. A is not positive definite
+					System.arraycopy(in, 0, out, 0, in.length);
+					return -1;
+				}
+				alpha[c] = converged[c] ? 0 : rz[c] / pq[c];
+			}
+			for(int k = 0; k < in.length; ++k) {
+				final double a = alpha[k % components];
+				out[k] += a * p[k];
+				r[k] -= a * q[k];
+				z[k] = r[k] * inverseDiagonal[k / components];
+			}
+			dot(r, z, components, pq);
+			for(int c = 0; c < components; ++c) {
+				// pq holds the new r*z now
+				alpha[c] = rz[c] == 0 ? 0 : pq[c] / rz[c];
+				rz[c] = pq[c];
+			}
+			for(int k = 0; k < in.length; ++k) {
+				p[k] = z[k] + alpha[k % components] * p[k];
+			}
+		}
+		return iteration;
+	}
+	/**
+	 * out = (I - stepSize * L) in, with the given symmetric @p weights
+	 * and the mirrored entries, see symmetricWeights()
+	 */
+	private void applyImplicit(final double[] weights, final double stepSize,
+								final double[] in, final double[] out, final int components)
+	{
+		Parallel.forEachChunk(numVertices(), new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				for(int i = begin; i < end; ++i) {
+					final int row = i * components;
+					for(int c = 0; c < components; ++c) {
+						out[row + c] = in[row + c];
+					}
+					for(int k = m_ring.begin(i); k < m_ring.end(i); ++k) {
+						final double weight = weights[k] * stepSize;
+						final int column = m_ring.vertex(k) * components;
+						for(int c = 0; c < components; ++c) {
+							out[row + c] -= (in[column + c] - in[row + c]) * weight;
+						}
+					}
+				}
+			}
+		});
+		// usually there are none, hence no need to parallelize
+		for(int m = 0; m < m_mirroredRows.length; ++m) {
+			final double weight = m_mirroredWeights[m] * stepSize;
+			final int row = m_mirroredRows[m] * components;
+			final int column = m_mirroredColumns[m] * components;
+			for(int c = 0; c < components; ++c) {
+				out[row + c] -= (in[column + c] - in[row + c]) * weight;
+			}
+		}
+	}
+	/**
+	 * Compute the dot product of each of the @p components of @p a and @p b.
+	 *
+	 * Partial sums are computed in parallel over chunks of fixed size and
+	 * added up in order, hence the result does not depend on the number of threads.
+	 */
+	private void dot(final double[] a, final double[] b, final int components, double[] out)
+	{
+		final int n = numVertices();
+		final int numChunks = Math.max(1, n / DOT_CHUNK_SIZE);
+		final double[] partial = new double[numChunks * components];
+		Parallel.forEachChunk(n, numChunks, new Parallel.Loop() {
+			@Override
+			public void run(int chunk, int begin, int end)
+			{
+				for(int k = begin * components; k < end * components; ++k) {
+					partial[chunk * components + k % components] += a[k] * b[k];
+				}
+			}
+		});
+		for(int c = 0; c < components; ++c) {
+			out[c] = 0;
+		}
+		for(int k = 0; k < partial.length; ++k) {
+			out[k % components] += partial[k];
+		}
+	}
+	/**
+	 * @return weights with w_ij and w_ji replaced by their average, computed on first use
+	 *
+	 * If j is a neighbor of i but not vice versa, e.g. on non-manifold meshes,
+	 * w_ji is zero and the averaged weight is also required as mirrored
+	 * entry in row j, see numMirrored(). Only then the matrix is symmetric.
+	 */
+	synchronized double[] symmetricWeights()
+	{
+		if (m_symmetricWeights != null) {
+			return m_symmetricWeights;
+		}
+		double[] weights = new double[m_weights.length];
+		// pairs of row i and entry k without transposed entry
+		int[] mirrored = new int[16];
+		int numMirrored = 0;
+		for(int i = 0; i < numVertices(); ++i) {
+			for(int k = m_ring.begin(i); k < m_ring.end(i); ++k) {
+				final int j = m_ring.vertex(k);
+				// find w_ji, rings are small hence a linear search is fine
+				int transposed = -1;
+				for(int l = m_ring.begin(j); l < m_ring.end(j); ++l) {
+					if (m_ring.vertex(l) == i) {
+						transposed = l;
+						break;
+					}
+				}
+				if (transposed != -1) {
+					weights[k] = 0.5d * (m_weights[k] + m_weights[transposed]);
+				} else {
+					weights[k] = 0.5d * m_weights[k];
+					if (2 * numMirrored == mirrored.length) {
+						mirrored = Arrays.copyOf(mirrored, 2 * mirrored.length);
+					}
+					mirrored[2 * numMirrored] = i;
+					mirrored[2 * numMirrored + 1] = k;
+					++numMirrored;
+				}
+			}
+		}
+		m_mirroredRows = new int[numMirrored];
+		m_mirroredColumns = new int[numMirrored];
+		m_mirroredWeights = new double[numMirrored];
+		for(int m = 0; m < numMirrored; ++m) {
+			final int k = mirrored[2 * m + 1];
+			m_mirroredRows[m] = m_ring.vertex(k);
+			m_mirroredColumns[m] = mirrored[2 * m];
+			m_mirroredWeights[m] = weights[k];
+		}
+		m_symmetricWeights = weights;
+		return weights;
+	}
+	/**
+	 * @return number of mirrored entries of the symmetric weights, see symmetricWeights()
+	 */
+	synchronized int numMirrored()
+	{
+		symmetricWeights();
+		return m_mirroredRows.length;
+	}
+	/**
+	 * @return row j of mirrored entry @p m, whose ring lacks the column
+	 */
+	int mirroredRow(int m)
+	{
+		return m_mirroredRows[m];
+	}
+	/**
+	 * @return column i of mirrored entry @p m
+	 */
+	int mirroredColumn(int m)
+	{
+		return m_mirroredColumns[m];
+	}
+	/**
+	 * @return symmetric weight of mirrored entry @p m
+	 */
+	double mirroredWeight(int m)
+	{
+		return m_mirroredWeights[m];
+	}
+	/**
+	 * @return weights rounded to single precision, computed on first use
+	 */
+	synchronized float[] floatWeights()
+	{
+		if (m_floatWeights == null) {
+			m_floatWeights = new float[m_weights.length];
+			for(int k = 0; k < m_weights.length; ++k) {
+				m_floatWeights[k] = (float) m_weights[k];
+			}
+		}
+		return m_floatWeights;
+	}
+	/**
+	 * dot products are split into chunks of this many vertices
+	 */
+	private static final int DOT_CHUNK_SIZE = 4096;
+	private OneRing m_ring;
+	private double[] m_weights;
+	private double[] m_symmetricWeights;
+	/**
+	 * entries of the symmetric weights that are missing in the rings, see symmetricWeights()
+	 */
+	private int[] m_mirroredRows;
+	private int[] m_mirroredColumns;
+	private double[] m_mirroredWeights;
+	private float[] m_floatWeights;
+}
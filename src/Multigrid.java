@@ -0,0 +1,462 @@
+/*
+	Copyright 2012 Milian Wolff <mail@milianw.de>
+
+	This program is free software; you can redistribute it and/or
+	modify it under the terms of the GNU General Public License as
+	published by the Free Software Foundation; either version 2 of
+	the License, or (at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Multigrid solver for implicit smoothing steps, i.e. for
+ *
+ *   (I - stepSize * L) x = b
+ *
+ * with the Laplacian L of a mesh. The hierarchy is built by aggregation:
+ * each vertex that is not yet part of a cluster starts a new one together
+ * with its free neighbors, and the coarse matrix is the sum of the fine
+ * entries between two clusters (Galerkin product with piecewise constant
+ * prolongation). Rows without off-diagonal entries, e.g. of isolated
+ * vertices, are all put into a single cluster. Each V-cycle smoothes with
+ * Gauss-Seidel sweeps on every level, hence low frequencies are damped on
+ * the coarse levels. The coarsest level is solved directly if it is small
+ * enough, otherwise with additional sweeps. The cycles
+ * precondition conjugate gradients, such that a small, fixed number of
+ * iterations suffices independent of the mesh size.
+ *
+ * Like Laplacian.solveImplicit(), w_ij and w_ji are averaged to get a
+ * symmetric matrix, see Laplacian.symmetricWeights().
+ *
+ * Like Laplacian, vectors contain a fixed number of components per vertex.
+ */
+class Multigrid {
+	/**
+	 * Build the hierarchy for the matrix I - @p stepSize * @p laplacian.
+	 */
+	public Multigrid(Laplacian laplacian, double stepSize)
+	{
+		m_levels = new ArrayList<Level>();
+		Level level = new Level(laplacian, stepSize);
+		m_levels.add(level);
+		while (level.size() > COARSEST_SIZE) {
+			Level coarse = level.coarsen();
+			if (coarse.size() > level.size() * MIN_COARSENING) {
+				// e.g. many disconnected components, coarsening does not pay off anymore
+				break;
+			}
+			m_levels.add(coarse);
+			level = coarse;
+		}
+		if (level.size() <= COARSEST_SIZE) {
+			m_coarsest = level.factorize();
+		}
+	}
+	/**
+	 * @return number of levels, including the finest one
+	 */
+	public int numLevels()
+	{
+		return m_levels.size();
+	}
+	/**
+	 * Solve for @p x, starting with its current values, using @p iterations
+	 * iterations of the conjugate gradient method preconditioned with one
+	 * V-cycle each. The components are solved simultaneously.
+	 *
+	 * @return residual norm relative to @p b after the last iteration
+	 */
+	public double solve(double[] b, double[] x, int components, int iterations)
+	{
+		Level fine = m_levels.get(0);
+		assert b.length == fine.size() * components;
+		assert x.length == b.length;
+		double[] r = new double[b.length];
+		double[] z = new double[b.length];
+		double[] p = new double[b.length];
+		double[] q = new double[b.length];
+		double[] rz = new double[components];
+		double[] pq = new double[components];
+		double[] rzNew = new double[components];
+		fine.residual(b, x, r, components);
+		vCycle(0, r, z, components);
+		System.arraycopy(z, 0, p, 0, z.length);
+		dot(r, z, components, rz);
+		for(int iteration = 0; iteration < iterations; ++iteration) {
+			fine.multiply(p, q, components);
+			dot(p, q, components, pq);
+			for(int k = 0; k < b.length; ++k) {
+				final int c = k % components;
+				final double alpha = pq[c] == 0 ? 0 : rz[c] / pq[c];
+				x[k] += alpha * p[k];
+				r[k] -= alpha * q[k];
+			}
+			if (iteration + 1 == iterations) {
+				break;
+			}
+			Arrays.fill(z, 0);
+			vCycle(0, r, z, components);
+			dot(r, z, components, rzNew);
+			for(int k = 0; k < b.length; ++k) {
+				final int c = k % components;
+				p[k] = z[k] + (rz[c] == 0 ? 0 : rzNew[c] / rz[c]) * p[k];
+			}
+			System.arraycopy(rzNew, 0, rz, 0, components);
+		}
+		return Math.sqrt(dot(r, r) / Math.max(Double.MIN_VALUE, dot(b, b)));
+	}
+	private void vCycle(int index, double[] b, double[] x, int components)
+	{
+		Level level = m_levels.get(index);
+		if (index + 1 == m_levels.size()) {
+			if (m_coarsest != null) {
+				solveDense(m_coarsest, b, x, level.size(), components);
+			} else {
+				// coarsening stalled, a dense factorization would be too large
+				for(int sweep = 0; sweep < COARSEST_SWEEPS; ++sweep) {
+					level.gaussSeidel(b, x, components, false);
+					level.gaussSeidel(b, x, components, true);
+				}
+			}
+			return;
+		}
+		for(int sweep = 0; sweep < SWEEPS; ++sweep) {
+			level.gaussSeidel(b, x, components, false);
+		}
+		double[] residual = new double[b.length];
+		level.residual(b, x, residual, components);
+		Level coarse = m_levels.get(index + 1);
+		double[] coarseB = new double[coarse.size() * components];
+		double[] coarseX = new double[coarseB.length];
+		level.restrict(residual, coarseB, components);
+		vCycle(index + 1, coarseB, coarseX, components);
+		level.prolongAdd(coarseX, x, components);
+		// sweep in reverse order, which keeps the cycle symmetric
+		for(int sweep = 0; sweep < SWEEPS; ++sweep) {
+			level.gaussSeidel(b, x, components, true);
+		}
+	}
+	/**
+	 * Solve with the LU factorization @p lu of the coarsest level, see Level.factorize().
+	 */
+	private static void solveDense(double[] lu, double[] b, double[] x, int n, int components)
+	{
+		for(int c = 0; c < components; ++c) {
+			// forward substitution, L has unit diagonal
+			for(int i = 0; i < n; ++i) {
+				double sum = b[i * components + c];
+				for(int j = 0; j < i; ++j) {
+					sum -= lu[i * n + j] * x[j * components + c];
+				}
+				x[i * components + c] = sum;
+			}
+			// backward substitution
+			for(int i = n - 1; i >= 0; --i) {
+				double sum = x[i * components + c];
+				for(int j = i + 1; j < n; ++j) {
+					sum -= lu[i * n + j] * x[j * components + c];
+				}
+				x[i * components + c] = lu[i * n + i] == 0 ? 0 : sum / lu[i * n + i];
+			}
+		}
+	}
+	private static void dot(double[] a, double[] b, int components, double[] out)
+	{
+		Arrays.fill(out, 0);
+		for(int k = 0; k < a.length; ++k) {
+			out[k % components] += a[k] * b[k];
+		}
+	}
+	private static double dot(double[] a, double[] b)
+	{
+		double sum = 0;
+		for(int k = 0; k < a.length; ++k) {
+			sum += a[k] * b[k];
+		}
+		return sum;
+	}
+	/**
+	 * Sparse matrix of one level in compressed sparse row form with
+	 * separate diagonal, plus the mapping of its rows to the next coarser level.
+	 */
+	private static class Level {
+		/**
+		 * finest level, I - stepSize * L with symmetric weights
+		 */
+		Level(Laplacian laplacian, double stepSize)
+		{
+			final int n = laplacian.numVertices();
+			final double[] weights = laplacian.symmetricWeights();
+			final int numMirrored = laplacian.numMirrored();
+			m_offsets = new int[n + 1];
+			m_diagonal = new double[n];
+			for(int i = 0; i < n; ++i) {
+				m_offsets[i + 1] = laplacian.end(i) - laplacian.begin(i);
+			}
+			for(int m = 0; m < numMirrored; ++m) {
+				++m_offsets[laplacian.mirroredRow(m) + 1];
+			}
+			for(int i = 0; i < n; ++i) {
+				m_offsets[i + 1] += m_offsets[i];
+			}
+			m_columns = new int[m_offsets[n]];
+			m_values = new double[m_offsets[n]];
+			// next free entry of each row
+			int[] next = Arrays.copyOf(m_offsets, n);
+			for(int i = 0; i < n; ++i) {
+				double diagonal = 1;
+				for(int k = laplacian.begin(i); k < laplacian.end(i); ++k) {
+					final double weight = weights[k] * stepSize;
+					m_columns[next[i]] = laplacian.column(k);
+					m_values[next[i]] = -weight;
+					++next[i];
+					diagonal += weight;
+				}
+				m_diagonal[i] = diagonal;
+			}
+			for(int m = 0; m < numMirrored; ++m) {
+				final int i = laplacian.mirroredRow(m);
+				final double weight = laplacian.mirroredWeight(m) * stepSize;
+				m_columns[next[i]] = laplacian.mirroredColumn(m);
+				m_values[next[i]] = -weight;
+				++next[i];
+				m_diagonal[i] += weight;
+			}
+		}
+		Level(int[] offsets, int[] columns, double[] values, double[] diagonal)
+		{
+			m_offsets = offsets;
+			m_columns = columns;
+			m_values = values;
+			m_diagonal = diagonal;
+		}
+		int size()
+		{
+			return m_diagonal.length;
+		}
+		/**
+		 * Aggregate the rows of this level and build the next coarser one.
+		 */
+		Level coarsen()
+		{
+			final int n = size();
+			m_aggregate = new int[n];
+			Arrays.fill(m_aggregate, -1);
+			int numAggregates = 0;
+			// rows without off-diagonal entries are already solved exactly by
+			// the Gauss-Seidel sweeps, hence cluster them all together
+			int isolatedAggregate = -1;
+			for(int i = 0; i < n; ++i) {
+				if (m_aggregate[i] != -1) {
+					continue;
+				}
+				if (m_offsets[i] == m_offsets[i + 1]) {
+					if (isolatedAggregate == -1) {
+						isolatedAggregate = numAggregates++;
+					}
+					m_aggregate[i] = isolatedAggregate;
+					continue;
+				}
+				m_aggregate[i] = numAggregates;
+				for(int k = m_offsets[i]; k < m_offsets[i + 1]; ++k) {
+					if (m_aggregate[m_columns[k]] == -1) {
+						m_aggregate[m_columns[k]] = numAggregates;
+					}
+				}
+				++numAggregates;
+			}
+			// members of each aggregate, counting sort hence ascending
+			int[] memberOffsets = new int[numAggregates + 1];
+			for(int i = 0; i < n; ++i) {
+				++memberOffsets[m_aggregate[i] + 1];
+			}
+			for(int a = 0; a < numAggregates; ++a) {
+				memberOffsets[a + 1] += memberOffsets[a];
+			}
+			int[] next = Arrays.copyOf(memberOffsets, numAggregates);
+			int[] members = new int[n];
+			for(int i = 0; i < n; ++i) {
+				members[next[m_aggregate[i]]++] = i;
+			}
+			// sum up the entries between aggregates, merging duplicates via position
+			int[] offsets = new int[numAggregates + 1];
+			int[] columns = new int[m_columns.length];
+			double[] values = new double[m_values.length];
+			double[] diagonal = new double[numAggregates];
+			int[] position = new int[numAggregates];
+			Arrays.fill(position, -1);
+			int size = 0;
+			for(int a = 0; a < numAggregates; ++a) {
+				offsets[a] = size;
+				for(int m = memberOffsets[a]; m < memberOffsets[a + 1]; ++m) {
+					final int i = members[m];
+					diagonal[a] += m_diagonal[i];
+					for(int k = m_offsets[i]; k < m_offsets[i + 1]; ++k) {
+						final int b = m_aggregate[m_columns[k]];
+						if (b == a) {
+							diagonal[a] += m_values[k];
+						} else if (position[b] < offsets[a]) {
+							position[b] = size;
+							columns[size] = b;
+							values[size] = m_values[k];
+							++size;
+						} else {
+							values[position[b]] += m_values[k];
+						}
+					}
+				}
+			}
+			offsets[numAggregates] = size;
+			return new Level(offsets, Arrays.copyOf(columns, size), Arrays.copyOf(values, size),
+								diagonal);
+		}
+		/**
+		 * @return dense LU factorization of this level without pivoting,
+		 * row major. The matrix is diagonally dominant unless negative
+		 * weights are involved, in which case zero pivots are skipped.
+		 */
+		double[] factorize()
+		{
+			final int n = size();
+			double[] lu = new double[n * n];
+			for(int i = 0; i < n; ++i) {
+				lu[i * n + i] = m_diagonal[i];
+				for(int k = m_offsets[i]; k < m_offsets[i + 1]; ++k) {
+					lu[i * n + m_columns[k]] += m_values[k];
+				}
+			}
+			for(int k = 0; k < n; ++k) {
+				final double pivot = lu[k * n + k];
+				if (pivot == 0) {
+					continue;
+				}
+				for(int i = k + 1; i < n; ++i) {
+					final double factor = lu[i * n + k] / pivot;
+					lu[i * n + k] = factor;
+					if (factor == 0) {
+						continue;
+					}
+					for(int j = k + 1; j < n; ++j) {
+						lu[i * n + j] -= factor * lu[k * n + j];
+					}
+				}
+			}
+			return lu;
+		}
+		/**
+		 * One Gauss-Seidel sweep for A x = b, updating @p x in place.
+		 */
+		void gaussSeidel(double[] b, double[] x, int components, boolean reverse)
+		{
+			final int n = size();
+			for(int l = 0; l < n; ++l) {
+				final int i = reverse ? n - 1 - l : l;
+				if (m_diagonal[i] == 0) {
+					continue;
+				}
+				final int row = i * components;
+				for(int c = 0; c < components; ++c) {
+					double sum = b[row + c];
+					for(int k = m_offsets[i]; k < m_offsets[i + 1]; ++k) {
+						sum -= m_values[k] * x[m_columns[k] * components + c];
+					}
+					x[row + c] = sum / m_diagonal[i];
+				}
+			}
+		}
+		/**
+		 * product = A x
+		 */
+		void multiply(double[] x, double[] product, int components)
+		{
+			for(int i = 0; i < size(); ++i) {
+				final int row = i * components;
+				for(int c = 0; c < components; ++c) {
+					double sum = m_diagonal[i] * x[row + c];
+					for(int k = m_offsets[i]; k < m_offsets[i + 1]; ++k) {
+						sum += m_values[k] * x[m_columns[k] * components + c];
+					}
+					product[row + c] = sum;
+				}
+			}
+		}
+		/**
+		 * residual = b - A x
+		 */
+		void residual(double[] b, double[] x, double[] residual, int components)
+		{
+			for(int i = 0; i < size(); ++i) {
+				final int row = i * components;
+				for(int c = 0; c < components; ++c) {
+					double sum = b[row + c] - m_diagonal[i] * x[row + c];
+					for(int k = m_offsets[i]; k < m_offsets[i + 1]; ++k) {
+						sum -= m_values[k] * x[m_columns[k] * components + c];
+					}
+					residual[row + c] = sum;
+				}
+			}
+		}
+		/**
+		 * coarse = P^T fine, i.e. sum up the values of each aggregate
+		 */
+		void restrict(double[] fine, double[] coarse, int components)
+		{
+			for(int i = 0; i < size(); ++i) {
+				for(int c = 0; c < components; ++c) {
+					coarse[m_aggregate[i] * components + c] += fine[i * components + c];
+				}
+			}
+		}
+		/**
+		 * fine += P coarse, i.e. add the correction of each aggregate to its members
+		 */
+		void prolongAdd(double[] coarse, double[] fine, int components)
+		{
+			for(int i = 0; i < size(); ++i) {
+				for(int c = 0; c < components; ++c) {
+					fine[i * components + c] += coarse[m_aggregate[i] * components + c];
+				}
+			}
+		}
+		private int[] m_offsets;
+		private int[] m_columns;
+		private double[] m_values;
+		private double[] m_diagonal;
+		/**
+		 * row of the next coarser level for each row, null on the coarsest level
+		 */
+		private int[] m_aggregate;
+	}
+	/**
+	 * levels with at most this many rows are solved directly
+	 */
+	private static final int COARSEST_SIZE = 64;
+	/**
+	 * stop coarsening if a level does not shrink at least by this factor
+	 */
+	private static final double MIN_COARSENING = 0.8;
+	/**
+	 * pre- and post-smoothing sweeps per level
+	 */
+	private static final int SWEEPS = 2;
+	/**
+	 * pairs of forward and backward sweeps on a coarsest level that is too
+	 * large to be factorized
+	 */
+	private static final int COARSEST_SWEEPS = 8;
+	private ArrayList<Level> m_levels;
+	/**
+	 * LU factorization of the coarsest level, null if it has more than COARSEST_SIZE rows
+	 */
+	private double[] m_coarsest;
+}
@@ -0,0 +1,99 @@
+/*
+	Copyright 2012 Milian Wolff <mail@milianw.de>
+
+	This program is free software; you can redistribute it and/or
+	modify it under the terms of the GNU General Public License as
+	published by the Free Software Foundation; either version 2 of
+	the License, or (at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * One-ring neighborhoods of all vertices of a corner table,
+ * stored in compressed sparse row form.
+ *
+ * The neighbors of vertex v are found at the indices k in
+ * [begin(v), end(v)), in the same order as returned by
+ * CornerTable.vertexNeighbors(). Iterating them does not allocate:
+ *
+ *   for(int k = ring.begin(v); k < ring.end(v); ++k) {
+ *     int j = ring.vertex(k);
+ *     ...
+ *   }
+ */
+class OneRing {
+	/**
+	 * @param offsets numVertices + 1 entries, offsets[v] is the first
+	 * neighbor index of v, offsets[v + 1] is the end of its neighbors
+	 * @param vertices neighbor vertex ids
+	 * @param corners neighbor corner ids, i.e. vertices[k] == table.vertex(corners[k])
+	 */
+	public OneRing(int[] offsets, int[] vertices, int[] corners)
+	{
+		assert offsets.length > 0;
+		assert vertices.length == corners.length;
+		assert offsets[offsets.length - 1] == vertices.length;
+		m_offsets = offsets;
+		m_vertices = vertices;
+		m_corners = corners;
+	}
+	/**
+	 * @return number of vertices covered by this ring
+	 */
+	public int numVertices()
+	{
+		return m_offsets.length - 1;
+	}
+	/**
+	 * @return index of the first neighbor of vertex @p v
+	 */
+	public int begin(int v)
+	{
+		return m_offsets[v];
+	}
+	/**
+	 * @return index behind the last neighbor of vertex @p v
+	 */
+	public int end(int v)
+	{
+		return m_offsets[v + 1];
+	}
+	/**
+	 * @return number of neighbors of vertex @p v
+	 */
+	public int degree(int v)
+	{
+		return m_offsets[v + 1] - m_offsets[v];
+	}
+	/**
+	 * @return vertex id of neighbor @p k
+	 */
+	public int vertex(int k)
+	{
+		return m_vertices[k];
+	}
+	/**
+	 * @return corner id of neighbor @p k, see CornerTable.vertexNeighbors()
+	 */
+	public int corner(int k)
+	{
+		return m_corners[k];
+	}
+	/**
+	 * @return total number of neighbor entries, i.e. the number of directed edges
+	 */
+	public int size()
+	{
+		return m_vertices.length;
+	}
+	private int[] m_offsets;
+	private int[] m_vertices;
+	private int[] m_corners;
+}
@@ -0,0 +1,121 @@
+/*
+	Copyright 2012 Milian Wolff <mail@milianw.de>
+
+	This program is free software; you can redistribute it and/or
+	modify it under the terms of the GNU General Public License as
+	published by the Free Software Foundation; either version 2 of
+	the License, or (at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Minimal helper to split index ranges into chunks and
+ * run them on all available cores.
+ *
+ * Chunk boundaries only depend on the range size and the number
+ * of chunks, never on scheduling, so algorithms that combine
+ * per-chunk results in chunk order are deterministic.
+ */
+class Parallel
+{
+	/**
+	 * Body of a parallel loop, called once per chunk
+	 * with the half-open index range [begin, end).
+	 */
+	interface Loop
+	{
+		void run(int chunk, int begin, int end);
+	}
+	/**
+	 * @return number of worker threads
+	 */
+	public static int numThreads()
+	{
+		return m_pool.getParallelism();
+	}
+	/**
+	 * @return sensible number of chunks for a range of @p size elements,
+	 * at least one and at most one chunk per @p minChunkSize elements
+	 */
+	public static int numChunks(int size, int minChunkSize)
+	{
+		return Math.max(1, Math.min(numThreads() * 4, size / Math.max(1, minChunkSize)));
+	}
+	/**
+	 * @return first index of chunk @p chunk when splitting @p size elements
+	 * into @p numChunks chunks
+	 */
+	public static int chunkBegin(int size, int numChunks, int chunk)
+	{
+		return (int) ((long) size * chunk / numChunks);
+	}
+	/**
+	 * Run @p body for each of the @p numChunks chunks of [0, size)
+	 * and wait for all of them to finish.
+	 *
+	 * Errors thrown by the body, including failed assertions,
+	 * are rethrown in the calling thread.
+	 */
+	public static void forEachChunk(final int size, final int numChunks, final Loop body)
+	{
+		assert numChunks > 0;
+		if (numChunks == 1) {
+			body.run(0, 0, size);
+			return;
+		}
+		ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>(numChunks);
+		for(int i = 0; i < numChunks; ++i) {
+			final int chunk = i;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call()
+				{
+					body.run(chunk, chunkBegin(size, numChunks, chunk),
+							chunkBegin(size, numChunks, chunk + 1));
+					return null;
+				}
+			});
+		}
+		for(Future<Void> future : m_pool.invokeAll(tasks)) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				} else if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new RuntimeException(cause);
+			}
+		}
+	}
+	/**
+	 * Convenience overload that picks the number of chunks via numChunks().
+	 */
+	public static void forEachChunk(int size, Loop body)
+	{
+		forEachChunk(size, numChunks(size, MIN_CHUNK_SIZE), body);
+	}
+	/**
+	 * ranges smaller than this are not worth splitting
+	 */
+	public static final int MIN_CHUNK_SIZE = 1024;
+	private static final ForkJoinPool m_pool = new ForkJoinPool();
+}
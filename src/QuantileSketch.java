@@ -0,0 +1,172 @@
+/*
+	Copyright 2012 Milian Wolff <mail@milianw.de>
+
+	This program is free software; you can redistribute it and/or
+	modify it under the terms of the GNU General Public License as
+	published by the Free Software Foundation; either version 2 of
+	the License, or (at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Fixed memory sketch to approximate quantiles of a stream of values,
+ * using histograms with logarithmically growing bins for positive and
+ * negative values, see Masson et al. "DDSketch: A Fast and Fully-Mergeable
+ * Quantile Sketch with Relative-Error Guarantees".
+ *
+ * Bin i covers magnitudes in (gamma^(i-1), gamma^i] with
+ * gamma = (1 + accuracy) / (1 - accuracy), hence quantiles have a relative
+ * error of at most the given accuracy, independent of the distribution of
+ * the values. That makes it suitable for heavy tailed data like curvature.
+ * Magnitudes below MIN_MAGNITUDE are counted as zero, those above
+ * MAX_MAGNITUDE in the outermost bins, but quantiles are always clamped
+ * to the exact minimum and maximum.
+ *
+ * Sketches only count values, hence merging them is exact and the
+ * result does not depend on the order of add() and merge() calls.
+ */
+class QuantileSketch {
+	/**
+	 * @param accuracy relative accuracy of quantiles, between 0 and 1
+	 */
+	public QuantileSketch(double accuracy)
+	{
+		assert accuracy > 0 && accuracy < 1 : accuracy;
+		m_accuracy = accuracy;
+		m_logGamma = Math.log((1 + accuracy) / (1 - accuracy));
+		m_minIndex = (int) Math.ceil(Math.log(MIN_MAGNITUDE) / m_logGamma);
+		final int maxIndex = (int) Math.ceil(Math.log(MAX_MAGNITUDE) / m_logGamma);
+		m_positive = new long[maxIndex - m_minIndex + 1];
+		m_negative = new long[m_positive.length];
+		m_min = Double.POSITIVE_INFINITY;
+		m_max = Double.NEGATIVE_INFINITY;
+	}
+	public void add(double value)
+	{
+		assert !Double.isNaN(value);
+		++m_count;
+		m_min = Math.min(m_min, value);
+		m_max = Math.max(m_max, value);
+		if (value >= MIN_MAGNITUDE) {
+			++m_positive[bin(value)];
+		} else if (value <= -MIN_MAGNITUDE) {
+			++m_negative[bin(-value)];
+		} else {
+			++m_zeros;
+		}
+	}
+	/**
+	 * Add all values counted by @p other, which must have the same accuracy.
+	 */
+	public void merge(QuantileSketch other)
+	{
+		assert other.m_accuracy == m_accuracy;
+		m_count += other.m_count;
+		m_zeros += other.m_zeros;
+		m_min = Math.min(m_min, other.m_min);
+		m_max = Math.max(m_max, other.m_max);
+		for(int i = 0; i < m_positive.length; ++i) {
+			m_positive[i] += other.m_positive[i];
+			m_negative[i] += other.m_negative[i];
+		}
+	}
+	/**
+	 * @return number of added values
+	 */
+	public long count()
+	{
+		return m_count;
+	}
+	public double min()
+	{
+		return m_min;
+	}
+	public double max()
+	{
+		return m_max;
+	}
+	/**
+	 * Approximate the @p p-th quantile, i.e. the value at index
+	 * p * (count() - 1) of the sorted values.
+	 *
+	 * @param p fraction between 0 and 1
+	 * @return approximate quantile, NaN if no values were added
+	 */
+	public double quantile(double p)
+	{
+		assert p >= 0 && p <= 1 : p;
+		if (m_count == 0) {
+			return Double.NaN;
+		}
+		final double rank = p * (m_count - 1);
+		long below = 0;
+		// negative values in ascending order, i.e. descending magnitude
+		for(int i = m_negative.length - 1; i >= 0; --i) {
+			below += m_negative[i];
+			if (below > rank) {
+				return clamp(-value(i));
+			}
+		}
+		below += m_zeros;
+		if (below > rank) {
+			return clamp(0);
+		}
+		for(int i = 0; i < m_positive.length; ++i) {
+			below += m_positive[i];
+			if (below > rank) {
+				return clamp(value(i));
+			}
+		}
+		return m_max;
+	}
+	/**
+	 * @return bin of the positive @p magnitude
+	 */
+	private int bin(double magnitude)
+	{
+		final int index = (int) Math.ceil(Math.log(magnitude) / m_logGamma) - m_minIndex;
+		return Math.max(0, Math.min(m_positive.length - 1, index));
+	}
+	/**
+	 * @return magnitude with the smallest relative error to all magnitudes in bin @p bin
+	 */
+	private double value(int bin)
+	{
+		final double gamma = Math.exp(m_logGamma);
+		return 2 * Math.exp((bin + m_minIndex) * m_logGamma) / (gamma + 1);
+	}
+	private double clamp(double value)
+	{
+		return Math.max(m_min, Math.min(m_max, value));
+	}
+	/**
+	 * smallest and largest magnitudes with their own bins
+	 */
+	public static final double MIN_MAGNITUDE = 1E-12;
+	public static final double MAX_MAGNITUDE = 1E12;
+	private final double m_accuracy;
+	/**
+	 * logarithm of the growth factor gamma of the bins
+	 */
+	private final double m_logGamma;
+	/**
+	 * index of the first bin, i.e. the one of MIN_MAGNITUDE
+	 */
+	private final int m_minIndex;
+	/**
+	 * counts per bin, for positive values and magnitudes of negative values
+	 */
+	private final long[] m_positive;
+	private final long[] m_negative;
+	private long m_zeros;
+	private long m_count;
+	private double m_min;
+	private double m_max;
+}
@@ -66,16 +66,17 @@ public class Silhouette {
 		}
 		// find visible edges by iterating over the corner table
 		CornerTable table = new CornerTable(geometry);
-		for(Corner corner : table.corners()) {
+		for(int corner = 0; corner < table.size(); ++corner) {
 			// an edge is part of the silhouette if 
 			// a) it is part of a visible face
 			// b) either it has adjacent face
 			// c) or its adjacent face is not visible
-			if (visibleFaces.contains(corner.triangle)
-				&& (corner.opposite == null || !visibleFaces.contains(corner.opposite.triangle)))
+			int opposite = table.opposite(corner);
+			if (visibleFaces.contains(table.triangle(corner))
+				&& (opposite == CornerTable.NONE || !visibleFaces.contains(table.triangle(opposite))))
 			{
-				int a = silhouette.addVertex(geometry.getVertex(corner.next.vertex));
-				int b = silhouette.addVertex(geometry.getVertex(corner.prev.vertex));
+				int a = silhouette.addVertex(geometry.getVertex(table.vertex(table.next(corner))));
+				int b = silhouette.addVertex(geometry.getVertex(table.vertex(table.prev(corner))));
 				silhouette.addPolygon(new PiVector(a, b));
 			}
 		}
@@ -114,15 +115,18 @@ public class Silhouette {
 		// corner base vertex and next and prev vertex, we draw the zero level set
 		// to find it we interpolate the dot products (cmp. barycentric coordinates)
 		CornerTable table = new CornerTable(geometry);
-		for(Corner corner : table.corners()) {
+		for(int corner = 0; corner < table.size(); ++corner) {
 			// TODO: optimize: only compute visibility (i.e. dot product) once for each vertex
 			// but see whether this is actually noticeably faster
-			PdVector rayA = PdVector.subNew(geometry.getVertex(corner.vertex), viewer);
-			double a = rayA.dot(geometry.getVertexNormal(corner.vertex));
-			PdVector rayB = PdVector.subNew(geometry.getVertex(corner.next.vertex), viewer);
-			double b = rayB.dot(geometry.getVertexNormal(corner.next.vertex));
-			PdVector rayC = PdVector.subNew(geometry.getVertex(corner.prev.vertex), viewer);
-			double c = rayC.dot(geometry.getVertexNormal(corner.prev.vertex));
+			int vA = table.vertex(corner);
+			int vB = table.vertex(table.next(corner));
+			int vC = table.vertex(table.prev(corner));
+			PdVector rayA = PdVector.subNew(geometry.getVertex(vA), viewer);
+			double a = rayA.dot(geometry.getVertexNormal(vA));
+			PdVector rayB = PdVector.subNew(geometry.getVertex(vB), viewer);
+			double b = rayB.dot(geometry.getVertexNormal(vB));
+			PdVector rayC = PdVector.subNew(geometry.getVertex(vC), viewer);
+			double c = rayC.dot(geometry.getVertexNormal(vC));
 			// we look for faces with one visible and two hidden vertices
 			// or vice versa, i.e. two invisible and one visible vertex
 			// via the corner table we look for the corner that is the
@@ -130,12 +134,12 @@ public class Silhouette {
 			if ((a <= 0 && b >= 0 && c >= 0) || (a >= 0 && b <= 0 && c <= 0)) {
 				// a is our single vertex, find the zero level set via interpolation
 				int v1 = silhouette.addVertex(
-						findZeroLevel(geometry.getVertex(corner.vertex), a,
-									  geometry.getVertex(corner.next.vertex), b)
+						findZeroLevel(geometry.getVertex(vA), a,
+									  geometry.getVertex(vB), b)
 				);
 				int v2 = silhouette.addVertex(
-						findZeroLevel(geometry.getVertex(corner.vertex), a,
-									  geometry.getVertex(corner.prev.vertex), c)
+						findZeroLevel(geometry.getVertex(vA), a,
+									  geometry.getVertex(vC), c)
 				);
 				silhouette.addPolygon(new PiVector(v1, v2));
 				continue;
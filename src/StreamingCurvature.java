@@ -0,0 +1,420 @@
+/*
+	Copyright 2012 Milian Wolff <mail@milianw.de>
+
+	This program is free software; you can redistribute it and/or
+	modify it under the terms of the GNU General Public License as
+	published by the Free Software Foundation; either version 2 of
+	the License, or (at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import jv.geom.PgElementSet;
+import jv.vecmath.PdVector;
+import jv.vecmath.PiVector;
+
+/**
+ * Out-of-core curvature computation for triangle meshes that do not fit
+ * into memory, e.g. large laser scans.
+ *
+ * The OBJ file is read in two passes:
+ *
+ * 1) vertex positions are streamed into a temporary binary file, and each
+ *    triangle is appended to the temporary bucket file of every chunk of
+ *    consecutive vertices it touches. Only the most recently used bucket
+ *    files are kept open, see MAX_OPEN_BUCKETS.
+ * 2) for each chunk, its triangles, i.e. the one-rings of the chunk
+ *    vertices, are loaded together with the positions of all vertices they
+ *    reference, i.e. the chunk plus a halo. Curvature is then computed on
+ *    that small local mesh and the values of the chunk vertices are
+ *    appended to the output file.
+ *
+ * The curvature of a vertex only depends on its one-ring, hence the results
+ * equal those of Curvature on the full mesh. Triangles keep their order
+ * within each chunk, such that the sums are evaluated in the same order.
+ * Only the chunk and its halo are ever in memory, but the halo grows with
+ * the spread of vertex indices in a one-ring, i.e. the mesh should be
+ * spatially sorted for this to pay off.
+ *
+ * The output layout is (all values big endian):
+ *
+ * header: int magic, int version, int #vertices
+ * values: double[4 * #vertices] mean, gaussian, minimum and maximum
+ *         curvature per vertex, NaN for invalid vertices, see CurvatureStore
+ */
+class StreamingCurvature {
+	/**
+	 * @param chunkSize number of vertices whose curvature is computed at once
+	 */
+	public StreamingCurvature(int chunkSize)
+	{
+		assert chunkSize > 0;
+		m_chunkSize = chunkSize;
+	}
+	/**
+	 * Compute the curvature of the triangle mesh in the OBJ file @p input
+	 * and write it to @p output, see the class documentation for the layout.
+	 *
+	 * Temporary files are created next to @p output.
+	 */
+	public void compute(File input, File output) throws IOException
+	{
+		File directory = output.getAbsoluteFile().getParentFile();
+		File vertexFile = File.createTempFile("curvature-vertices-", ".tmp", directory);
+		ArrayList<File> bucketFiles = new ArrayList<File>();
+		try {
+			int numVertices = split(input, vertexFile, bucketFiles, directory);
+			System.out.println("streaming curvature of " + numVertices + " vertices in "
+								+ bucketFiles.size() + " chunks");
+			DataOutputStream out = null;
+			RandomAccessFile vertices = null;
+			try {
+				vertices = new RandomAccessFile(vertexFile, "r");
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output), 1 << 16));
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(numVertices);
+				for(int chunk = 0; chunk < bucketFiles.size(); ++chunk) {
+					int begin = chunk * m_chunkSize;
+					int end = Math.min(numVertices, begin + m_chunkSize);
+					computeChunk(chunk, begin, end, bucketFiles.get(chunk), vertices.getChannel(), out);
+					delete(bucketFiles.get(chunk));
+				}
+				out.close();
+				out = null;
+			} finally {
+				close(out);
+				close(vertices);
+			}
+			System.out.println("done");
+		} finally {
+			delete(vertexFile);
+			for(File file : bucketFiles) {
+				if (file.exists()) {
+					delete(file);
+				}
+			}
+		}
+	}
+	/**
+	 * First pass: stream vertex positions of @p input into @p vertexFile and
+	 * distribute the triangles over one bucket file per chunk.
+	 *
+	 * @return number of vertices
+	 */
+	private int split(File input, File vertexFile, ArrayList<File> bucketFiles, File directory)
+			throws IOException
+	{
+		BufferedReader reader = null;
+		DataOutputStream vertices = null;
+		Buckets buckets = new Buckets(bucketFiles);
+		try {
+			reader = new BufferedReader(new FileReader(input), 1 << 16);
+			vertices = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(vertexFile), 1 << 16));
+			int numVertices = 0;
+			int[] triangle = new int[3];
+			String line;
+			while((line = reader.readLine()) != null) {
+				if (line.startsWith("v ")) {
+					String[] parts = line.trim().split("\\s+");
+					if (parts.length < 4) {
+						throw new IOException("invalid vertex: " + line);
+					}
+					for(int i = 1; i <= 3; ++i) {
+						vertices.writeDouble(Double.parseDouble(parts[i]));
+					}
+					++numVertices;
+					if (numVertices > bucketFiles.size() * m_chunkSize) {
+						bucketFiles.add(File.createTempFile("curvature-chunk-", ".tmp", directory));
+					}
+				} else if (line.startsWith("f ")) {
+					String[] parts = line.trim().split("\\s+");
+					if (parts.length != 4) {
+						throw new IOException("only triangle meshes are supported: " + line);
+					}
+					for(int i = 0; i < 3; ++i) {
+						triangle[i] = vertexIndex(parts[i + 1], numVertices);
+					}
+					// a triangle may touch up to three chunks, but is written to each only once
+					int first = triangle[0] / m_chunkSize;
+					int second = triangle[1] / m_chunkSize;
+					int third = triangle[2] / m_chunkSize;
+					writeTriangle(buckets.get(first), triangle);
+					if (second != first) {
+						writeTriangle(buckets.get(second), triangle);
+					}
+					if (third != first && third != second) {
+						writeTriangle(buckets.get(third), triangle);
+					}
+				}
+			}
+			buckets.close();
+			return numVertices;
+		} finally {
+			close(reader);
+			close(vertices);
+			close(buckets);
+		}
+	}
+	/**
+	 * Writers of the bucket files, of which at most MAX_OPEN_BUCKETS are open
+	 * at any time to not run out of file handles. When another one is
+	 * needed, the least recently used one is closed and reopened for
+	 * appending later on. Triangles of spatially sorted meshes touch few
+	 * neighboring chunks, hence that rarely happens.
+	 */
+	private static class Buckets implements Closeable {
+		Buckets(ArrayList<File> files)
+		{
+			m_files = files;
+			m_open = new LinkedHashMap<Integer, DataOutputStream>(16, 0.75f, true);
+		}
+		/**
+		 * @return writer appending to the bucket file of @p chunk
+		 */
+		DataOutputStream get(int chunk) throws IOException
+		{
+			DataOutputStream bucket = m_open.get(chunk);
+			if (bucket != null) {
+				return bucket;
+			}
+			if (m_open.size() == MAX_OPEN_BUCKETS) {
+				Iterator<DataOutputStream> eldest = m_open.values().iterator();
+				DataOutputStream closed = eldest.next();
+				eldest.remove();
+				closed.close();
+			}
+			bucket = new DataOutputStream(new BufferedOutputStream(
+							new FileOutputStream(m_files.get(chunk), true), 1 << 14));
+			m_open.put(chunk, bucket);
+			return bucket;
+		}
+		/**
+		 * Flush and close all open writers, throwing the first error.
+		 */
+		@Override
+		public void close() throws IOException
+		{
+			IOException error = null;
+			for(DataOutputStream bucket : m_open.values()) {
+				try {
+					bucket.close();
+				} catch (IOException e) {
+					if (error == null) {
+						error = e;
+					}
+				}
+			}
+			m_open.clear();
+			if (error != null) {
+				throw error;
+			}
+		}
+		private final ArrayList<File> m_files;
+		/**
+		 * open writers per chunk, in access order
+		 */
+		private final LinkedHashMap<Integer, DataOutputStream> m_open;
+	}
+	private static void writeTriangle(DataOutputStream bucket, int[] triangle) throws IOException
+	{
+		for(int v : triangle) {
+			bucket.writeInt(v);
+		}
+	}
+	/**
+	 * @return zero based index of the OBJ face entry @p entry, i.e. "v", "v/vt", "v//vn" or "v/vt/vn",
+	 *         where negative indices are relative to the @p numVertices read so far
+	 */
+	private static int vertexIndex(String entry, int numVertices) throws IOException
+	{
+		int slash = entry.indexOf('/');
+		int index = Integer.parseInt(slash == -1 ? entry : entry.substring(0, slash));
+		index = index < 0 ? numVertices + index : index - 1;
+		if (index < 0 || index >= numVertices) {
+			throw new IOException("invalid vertex index: " + entry);
+		}
+		return index;
+	}
+	/**
+	 * Second pass: compute the curvature of the vertices [@p begin, @p end)
+	 * from the triangles in @p bucketFile and append it to @p out.
+	 */
+	private void computeChunk(int chunk, int begin, int end, File bucketFile,
+							FileChannel vertexChannel, DataOutputStream out) throws IOException
+	{
+		int[] triangles = readInts(bucketFile);
+		// global indices of the chunk and halo vertices, sorted,
+		// such that local indices keep the order of the global ones
+		int[] vertices = triangles.clone();
+		Arrays.sort(vertices);
+		int numLocal = 0;
+		for(int i = 0; i < vertices.length; ++i) {
+			if (numLocal == 0 || vertices[numLocal - 1] != vertices[i]) {
+				vertices[numLocal++] = vertices[i];
+			}
+		}
+		vertices = Arrays.copyOf(vertices, numLocal);
+		if (triangles.length == 0) {
+			// only isolated vertices, which have no curvature
+			writeValues(begin, end, vertices, null, out);
+			return;
+		}
+
+		PgElementSet geometry = new PgElementSet(3);
+		geometry.setName("chunk " + chunk);
+		readVertices(vertexChannel, vertices, geometry);
+		for(int t = 0; t < triangles.length; t += 3) {
+			geometry.addElement(new PiVector(Arrays.binarySearch(vertices, triangles[t]),
+											Arrays.binarySearch(vertices, triangles[t + 1]),
+											Arrays.binarySearch(vertices, triangles[t + 2])));
+		}
+		writeValues(begin, end, vertices, new Curvature(geometry).store(), out);
+	}
+	/**
+	 * Append the curvature of the vertices [@p begin, @p end) in @p store,
+	 * whose vertices are the sorted global indices @p vertices, to @p out.
+	 */
+	private static void writeValues(int begin, int end, int[] vertices, CurvatureStore store,
+									DataOutputStream out) throws IOException
+	{
+		for(int v = begin; v < end; ++v) {
+			int i = Arrays.binarySearch(vertices, v);
+			if (i < 0 || !store.isValid(i)) {
+				for(int k = 0; k < 4; ++k) {
+					out.writeDouble(Double.NaN);
+				}
+				continue;
+			}
+			out.writeDouble(store.meanCurvature(i));
+			out.writeDouble(store.gaussianCurvature(i));
+			out.writeDouble(store.minimumCurvature(i));
+			out.writeDouble(store.maximumCurvature(i));
+		}
+	}
+	/**
+	 * Add the positions of the sorted global indices @p vertices in
+	 * @p channel to @p geometry.
+	 *
+	 * Runs of consecutive indices, e.g. the chunk itself, are read at once
+	 * with positional reads. The file is not mapped, since a mapping keeps
+	 * it locked on Windows until it is garbage collected, such that it
+	 * could not be deleted afterwards.
+	 */
+	private static void readVertices(FileChannel channel, int[] vertices, PgElementSet geometry)
+			throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(READ_VERTICES * VERTEX_BYTES);
+		int i = 0;
+		while (i < vertices.length) {
+			int run = 1;
+			while (i + run < vertices.length && run < READ_VERTICES
+					&& vertices[i + run] == vertices[i] + run) {
+				++run;
+			}
+			buffer.clear();
+			buffer.limit(run * VERTEX_BYTES);
+			long position = (long) vertices[i] * VERTEX_BYTES;
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, position + buffer.position()) < 0) {
+					throw new IOException("unexpected end of vertex file");
+				}
+			}
+			buffer.flip();
+			for(int k = 0; k < run; ++k) {
+				geometry.addVertex(new PdVector(buffer.getDouble(), buffer.getDouble(), buffer.getDouble()));
+			}
+			i += run;
+		}
+	}
+	/**
+	 * Delete the temporary @p file, warn if that fails.
+	 */
+	private static void delete(File file)
+	{
+		if (!file.delete()) {
+			System.err.println("could not delete temporary file: " + file);
+		}
+	}
+	private static int[] readInts(File file) throws IOException
+	{
+		int[] values = new int[(int) (file.length() / 4)];
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+			for(int i = 0; i < values.length; ++i) {
+				values[i] = in.readInt();
+			}
+		} finally {
+			close(in);
+		}
+		return values;
+	}
+	private static void close(Closeable closeable)
+	{
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+	/**
+	 * usage: StreamingCurvature input.obj output.bin [vertices per chunk]
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 2) {
+			System.err.println("usage: StreamingCurvature input.obj output.bin [vertices per chunk]");
+			System.exit(1);
+		}
+		int chunkSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CHUNK_SIZE;
+		new StreamingCurvature(chunkSize).compute(new File(args[0]), new File(args[1]));
+	}
+	/**
+	 * default number of vertices per chunk, small enough for the chunk,
+	 * its halo, corner table and curvature to fit into a 1GB heap
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 18;
+	static final int MAGIC = 0x53435653; // "SCVS"
+	static final int VERSION = 1;
+	/**
+	 * three doubles per vertex in the temporary vertex file
+	 */
+	private static final int VERTEX_BYTES = 3 * 8;
+	/**
+	 * maximum number of consecutive vertices read at once in the second pass
+	 */
+	private static final int READ_VERTICES = 1 << 12;
+	/**
+	 * maximum number of bucket files that are open at once in the first pass
+	 */
+	private static final int MAX_OPEN_BUCKETS = 64;
+	private final int m_chunkSize;
+}
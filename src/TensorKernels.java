@@ -0,0 +1,190 @@
+/*
+	Copyright 2012 Milian Wolff <mail@milianw.de>
+
+	This program is free software; you can redistribute it and/or
+	modify it under the terms of the GNU General Public License as
+	published by the Free Software Foundation; either version 2 of
+	the License, or (at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+/**
+ * Batched tensor math on flat arrays, i.e. the per-vertex operations of
+ * Curvature without PdVector/PdMatrix temporaries.
+ *
+ * Each kernel processes the vertices [begin, end) of arrays that store a
+ * fixed number of values per vertex consecutively:
+ *
+ * frame:      FRAME_SIZE values, the tangent plane normal n followed by
+ *             the unit vectors x and y spanning the tangent plane,
+ *             see Curvature.tangentPlane(); all zero if undefined
+ * local:      LOCAL_SIZE values a, b, c of the symmetric 2x2 tensor
+ *             in the frame, see CurvatureStore.tensor()
+ * global:     GLOBAL_SIZE values xx, xy, xz, yy, yz, zz, i.e. the upper
+ *             triangle of the symmetric 3x3 tensor
+ * directions: DIRECTIONS_SIZE values, the major and the minor principal
+ *             direction in the frame, see Utils.solveEigen2x2()
+ *
+ * The loops have no calls, allocations or data dependencies between
+ * vertices, such that the JIT can unroll them and keep everything in registers.
+ */
+class TensorKernels {
+	/**
+	 * Compute the frame of a tangent plane with the (not necessarily
+	 * normalized) normal @p mx, @p my, @p mz and write it to @p frames
+	 * at @p offset. If the normal has zero length, the frame is all zero.
+	 *
+	 * @return false if the normal has zero length
+	 */
+	static boolean tangentFrame(double mx, double my, double mz, double[] frames, int offset)
+	{
+		final double length = Math.sqrt(mx * mx + my * my + mz * mz);
+		if (length == 0) {
+			for(int k = 0; k < FRAME_SIZE; ++k) {
+				frames[offset + k] = 0;
+			}
+			return false;
+		}
+		final double nx = mx / length;
+		final double ny = my / length;
+		final double nz = mz / length;
+		// x = n cross e, with e the unit axis that is "most" perpendicular to n
+		double xx, xy, xz;
+		if (Math.abs(nx) < 0.9) {
+			// e = (1, 0, 0)
+			xx = 0;
+			xy = nz;
+			xz = -ny;
+		} else {
+			// e = (0, 1, 0)
+			xx = -nz;
+			xy = 0;
+			xz = nx;
+		}
+		final double xLength = Math.sqrt(xx * xx + xy * xy + xz * xz);
+		xx /= xLength;
+		xy /= xLength;
+		xz /= xLength;
+		frames[offset] = nx;
+		frames[offset + 1] = ny;
+		frames[offset + 2] = nz;
+		frames[offset + 3] = xx;
+		frames[offset + 4] = xy;
+		frames[offset + 5] = xz;
+		// y = n cross x
+		frames[offset + 6] = ny * xz - nz * xy;
+		frames[offset + 7] = nz * xx - nx * xz;
+		frames[offset + 8] = nx * xy - ny * xx;
+		return true;
+	}
+	/**
+	 * Compute the frames of the tangent planes normal to the mean curvature
+	 * operators @p meanOps, see CurvatureStore.meanOp().
+	 */
+	static void tangentFrames(double[] meanOps, double[] frames, int begin, int end)
+	{
+		for(int i = begin; i < end; ++i) {
+			tangentFrame(meanOps[3 * i], meanOps[3 * i + 1], meanOps[3 * i + 2],
+							frames, FRAME_SIZE * i);
+		}
+	}
+	/**
+	 * Rotate the local tensors @p local into the global frame, i.e.
+	 *
+	 *   G = [x y] B [x y]^T
+	 *
+	 * like Curvature.toGlobalTensor().
+	 */
+	static void toGlobal(double[] frames, double[] local, double[] global, int begin, int end)
+	{
+		for(int i = begin; i < end; ++i) {
+			final int f = FRAME_SIZE * i;
+			final double x0 = frames[f + 3], x1 = frames[f + 4], x2 = frames[f + 5];
+			final double y0 = frames[f + 6], y1 = frames[f + 7], y2 = frames[f + 8];
+			final int l = LOCAL_SIZE * i;
+			final double a = local[l], b = local[l + 1], c = local[l + 2];
+			// rows of B [x y]^T
+			final double u0 = a * x0 + b * y0, u1 = a * x1 + b * y1, u2 = a * x2 + b * y2;
+			final double v0 = b * x0 + c * y0, v1 = b * x1 + c * y1, v2 = b * x2 + c * y2;
+			final int g = GLOBAL_SIZE * i;
+			global[g] = x0 * u0 + y0 * v0;
+			global[g + 1] = x0 * u1 + y0 * v1;
+			global[g + 2] = x0 * u2 + y0 * v2;
+			global[g + 3] = x1 * u1 + y1 * v1;
+			global[g + 4] = x1 * u2 + y1 * v2;
+			global[g + 5] = x2 * u2 + y2 * v2;
+		}
+	}
+	/**
+	 * Project the global tensors @p global into the local frames, i.e.
+	 *
+	 *   B = [x y]^T G [x y]
+	 *
+	 * like Curvature.toLocalTensor(), but symmetric by construction.
+	 */
+	static void toLocal(double[] frames, double[] global, double[] local, int begin, int end)
+	{
+		for(int i = begin; i < end; ++i) {
+			final int f = FRAME_SIZE * i;
+			final double x0 = frames[f + 3], x1 = frames[f + 4], x2 = frames[f + 5];
+			final double y0 = frames[f + 6], y1 = frames[f + 7], y2 = frames[f + 8];
+			final int g = GLOBAL_SIZE * i;
+			final double g00 = global[g], g01 = global[g + 1], g02 = global[g + 2];
+			final double g11 = global[g + 3], g12 = global[g + 4], g22 = global[g + 5];
+			// G x and G y
+			final double gx0 = g00 * x0 + g01 * x1 + g02 * x2;
+			final double gx1 = g01 * x0 + g11 * x1 + g12 * x2;
+			final double gx2 = g02 * x0 + g12 * x1 + g22 * x2;
+			final double gy0 = g00 * y0 + g01 * y1 + g02 * y2;
+			final double gy1 = g01 * y0 + g11 * y1 + g12 * y2;
+			final double gy2 = g02 * y0 + g12 * y1 + g22 * y2;
+			final int l = LOCAL_SIZE * i;
+			local[l] = x0 * gx0 + x1 * gx1 + x2 * gx2;
+			local[l + 1] = 0.5d * (x0 * gy0 + x1 * gy1 + x2 * gy2 + y0 * gx0 + y1 * gx1 + y2 * gx2);
+			local[l + 2] = y0 * gy0 + y1 * gy1 + y2 * gy2;
+		}
+	}
+	/**
+	 * Principal directions of the symmetric local tensors @p local,
+	 * with the same conventions as Utils.solveEigen2x2(), i.e. the identity
+	 * for singular and diagonal tensors.
+	 */
+	static void principalDirections(double[] local, double[] directions, int begin, int end)
+	{
+		for(int i = begin; i < end; ++i) {
+			final int l = LOCAL_SIZE * i;
+			final double a = local[l], b = local[l + 1], c = local[l + 2];
+			final double trace = a + c;
+			final double root = Math.sqrt(trace * trace - 4 * (a * c - b * b));
+			final double l1 = 0.5 * (trace + root);
+			final double l2 = 0.5 * (trace - root);
+			final int d = DIRECTIONS_SIZE * i;
+			// eigenvectors (L - c, b), see Utils.solveEigen2x2(), with equal
+			// eigenvalues any direction is principal and we use the identity
+			if (b != 0 && !Double.isNaN(root) && l1 != l2) {
+				final double majorLength = Math.sqrt((l1 - c) * (l1 - c) + b * b);
+				final double minorLength = Math.sqrt((l2 - c) * (l2 - c) + b * b);
+				directions[d] = (l1 - c) / majorLength;
+				directions[d + 1] = b / majorLength;
+				directions[d + 2] = (l2 - c) / minorLength;
+				directions[d + 3] = b / minorLength;
+			} else {
+				directions[d] = 1;
+				directions[d + 1] = 0;
+				directions[d + 2] = 0;
+				directions[d + 3] = 1;
+			}
+		}
+	}
+	public static final int FRAME_SIZE = 9;
+	public static final int LOCAL_SIZE = 3;
+	public static final int GLOBAL_SIZE = 6;
+	public static final int DIRECTIONS_SIZE = 4;
+}
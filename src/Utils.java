@@ -106,6 +106,11 @@ class Utils
 		}
 		return x;
 	}
+	// neither NaN nor infinite, like Double.isFinite() of Java 8
+	public static boolean isFinite(double value)
+	{
+		return !Double.isNaN(value) && !Double.isInfinite(value);
+	}
 	// theta in radians!
 	public static PdMatrix rotationMatrix(double theta)
 	{
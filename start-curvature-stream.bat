@@ -0,0 +1 @@
+java -ea -cp ./bin:./lib/javaview.jar:./lib/jvx.jar -Xmx1g StreamingCurvature %*